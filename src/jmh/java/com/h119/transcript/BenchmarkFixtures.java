@@ -0,0 +1,76 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * The inputs of the benchmarks, all made from test_data/README.pdf, so that
+ * the results of different commits are comparable. The benchmarks are run
+ * from the project directory (see the jmh task in build.gradle).
+ */
+class BenchmarkFixtures {
+
+	public static final File PDF_FILE = new File("test_data", "README.pdf");
+
+	/**
+	 * A listener that ignores the log and the progress and never cancels.
+	 */
+	public static final ProcessListener SILENT = new ProcessListener() {
+		@Override
+		public void log(String message) {
+		}
+
+		@Override
+		public void progress(long workDone, long max) {
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+	};
+
+	private BenchmarkFixtures() {}
+
+	public static PDDocument loadDocument() throws IOException {
+		if (!PDF_FILE.isFile())
+			throw new IllegalStateException(String.format("%s is missing, run the benchmarks from the project directory", PDF_FILE));
+
+		return PDDocument.load(PDF_FILE);
+	}
+
+	/**
+	 * The first page of the document rendered like the application renders
+	 * scanned pages.
+	 */
+	public static PageImage renderPage(int dpi, ImageType imageType) throws IOException {
+		try (var document = loadDocument()) {
+			return new PageImage(new PDFRenderer(document).renderImageWithDPI(0, dpi, imageType), dpi);
+		}
+	}
+
+	/**
+	 * The text of the pages of the document, repeated until there are
+	 * pageCount pages.
+	 */
+	public static String[] pageTexts(int pageCount) throws IOException {
+		try (var document = loadDocument()) {
+			var stripper = new PDFTextStripper();
+			int documentPages = document.getNumberOfPages();
+			var texts = new String[pageCount];
+
+			for (int page = 0; page < pageCount; ++page) {
+				stripper.setStartPage(page % documentPages + 1);
+				stripper.setEndPage(page % documentPages + 1);
+				texts[page] = stripper.getText(document);
+			}
+
+			return texts;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the Word document of a number of pages: the paragraphs with
+ * docx4j alone, the whole WordExport (paragraphs and saving) and
+ * StreamingWordExport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocxBenchmark {
+
+	@Param({"10", "100"})
+	public int pages;
+
+	private String[] pageTexts;
+	private File exportFile;
+
+	@Setup
+	public void setup() throws IOException {
+		pageTexts = BenchmarkFixtures.pageTexts(pages);
+		exportFile = File.createTempFile("docx-benchmark", ".docx");
+	}
+
+	@TearDown
+	public void tearDown() {
+		exportFile.delete();
+	}
+
+	@Benchmark
+	public MainDocumentPart docx4jParagraphs() throws Docx4JException {
+		WordprocessingMLPackage wordPackage = WordprocessingMLPackage.createPackage();
+		MainDocumentPart mainDocumentPart = wordPackage.getMainDocumentPart();
+
+		for (var pageText: pageTexts) {
+			for (var line: Arrays.asList(pageText.split("\n")))
+				mainDocumentPart.addParagraphOfText(line);
+		}
+
+		return mainDocumentPart;
+	}
+
+	@Benchmark
+	public boolean wordExport() throws Docx4JException {
+		return WordExport.save(pageTexts, exportFile, BenchmarkFixtures.SILENT);
+	}
+
+	@Benchmark
+	public File streamingWordExport() throws IOException {
+		try (var export = new StreamingWordExport(exportFile, pageTexts.length)) {
+			for (int page = 0; page < pageTexts.length; ++page)
+				export.addPage(page, pageTexts[page]);
+
+			return export.finish();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.h119.transcript;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.tools.imageio.ImageIOUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding a rendered page as PNG: with ImageIOUtil.writeImage (which
+ * PageRenderer.writeImage uses) and with the PNG writer of ImageIO at its
+ * default and at a faster compression level. The images are written into
+ * memory, so that the disk doesn't distort the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+	private static final int DPI = 300;
+
+	@Param({"BINARY", "GRAY", "RGB"})
+	public ImageType imageType;
+
+	private PageImage page;
+	private ByteArrayOutputStream output;
+
+	@Setup
+	public void setup() throws IOException {
+		page = BenchmarkFixtures.renderPage(DPI, imageType);
+		output = new ByteArrayOutputStream(16 * 1024 * 1024);
+	}
+
+	@Benchmark
+	public int imageIOUtil() throws IOException {
+		output.reset();
+		ImageIOUtil.writeImage(page.getImage(), "png", output, DPI);
+
+		return output.size();
+	}
+
+	@Benchmark
+	public int imageIO() throws IOException {
+		output.reset();
+		ImageIO.write(page.getImage(), "png", output);
+
+		return output.size();
+	}
+
+	/**
+	 * The PNG writer with the lowest compression level that still
+	 * compresses (deflate level 1), trading size for speed.
+	 */
+	@Benchmark
+	public int imageIOFast() throws IOException {
+		output.reset();
+
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+
+		try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			// The writer uses deflate level (int) (9 * (1 - quality))
+			param.setCompressionQuality(0.8f);
+
+			writer.setOutput(stream);
+			writer.write(null, new IIOImage(page.getImage(), null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+
+		return output.size();
+	}
+}
@@ -0,0 +1,71 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.rendering.ImageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recognizing a page: from a PNG file (pixRead, SetImage and GetUTF8Text,
+ * like OcrProcess) and from the rendered pixels in memory (like Pipeline).
+ * It needs tessdata/eng.traineddata, and one engine is used without the OCR
+ * cache, so every invocation really recognizes the page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OcrBenchmark {
+
+	private static final int DPI = 300;
+
+	@Param({"BINARY", "GRAY"})
+	public ImageType imageType;
+
+	private TesseractPool pool;
+	private PageRaster raster;
+	private File imageFile;
+
+	@Setup
+	public void setup() throws IOException {
+		PageImage page = BenchmarkFixtures.renderPage(DPI, imageType);
+
+		raster = PageRaster.of(page);
+
+		imageFile = File.createTempFile("ocr-benchmark", ".png");
+		PageRenderer.writeImage(0, page, imageFile.getPath());
+
+		pool = new TesseractPool("eng", 1);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.close();
+		imageFile.delete();
+	}
+
+	@Benchmark
+	public String imageFile() throws InterruptedException {
+		return pool.recognize(imageFile.getPath());
+	}
+
+	@Benchmark
+	public String raster() throws InterruptedException {
+		return pool.recognize(raster);
+	}
+}
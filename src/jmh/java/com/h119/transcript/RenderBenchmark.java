@@ -0,0 +1,59 @@
+package com.h119.transcript;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering a page with PDFRenderer at the resolutions and with the image
+ * types the application uses (see ResolutionPlanner and RenderMode).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({"150", "300", "400"})
+	public int dpi;
+
+	@Param({"BINARY", "GRAY", "RGB"})
+	public ImageType imageType;
+
+	private PDDocument document;
+	private PDFRenderer renderer;
+
+	@Setup
+	public void setup() throws IOException {
+		document = BenchmarkFixtures.loadDocument();
+		renderer = new PDFRenderer(document);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		document.close();
+	}
+
+	@Benchmark
+	public BufferedImage renderImageWithDPI() throws IOException {
+		return renderer.renderImageWithDPI(0, dpi, imageType);
+	}
+}
@@ -0,0 +1,543 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.h119.transcript.util.Json;
+import com.h119.transcript.util.LanguageCodes;
+import static com.h119.transcript.util.LanguageCodes.Language;
+
+/**
+ * Processes PDF files from the command line, without starting JavaFX.
+ *
+ * The PDF files given (or found in the given directories) are processed by
+ * Pipeline one after the other. The log is written to the standard error,
+ * while the standard output gets one JSON object per line about the
+ * progress, so that it can be followed by other programs.
+ */
+public class Cli {
+
+	public static final int EXIT_OK = 0;
+	/** At least one of the documents could not be processed. */
+	public static final int EXIT_FAILED = 1;
+	public static final int EXIT_USAGE = 2;
+	/** The training data of the language is missing. */
+	public static final int EXIT_SETUP = 3;
+	public static final int EXIT_CANCELLED = 130;
+
+	/** The languages listed when the start of a name fits several. */
+	private static final int MAX_LISTED_LANGUAGES = 10;
+
+	private static final String USAGE =
+		"Usage: transcript --cli [options] <PDF file or directory>...\n" +
+		"       transcript --cli [options] --watch <directory>\n" +
+		"\n" +
+		"Options:\n" +
+		"  -l, --language <language> the language of the documents as a 3 or 2 letter\n" +
+		"                            code or its name, e.g. deu, ger, de or German (eng\n" +
+		"                            by default, several languages: eng+deu)\n" +
+		"  -o, --output <directory>  where to save the Word documents (and the page\n" +
+		"                            images); next to the PDF files by default\n" +
+		"  -w, --workers <n>         the number of pages recognized in parallel\n" +
+		"      --render-workers <n>  the number of pages rendered in parallel\n" +
+		"  -p, --pages <pages>       the pages to process, e.g. 1-20,45,100- (every\n" +
+		"                            page by default)\n" +
+		"      --colors <mode>       auto, gray, binary or rgb (auto by default)\n" +
+		"      --min-dpi <dpi>       the lowest resolution pages are rendered with\n" +
+		"      --max-dpi <dpi>       the highest resolution pages are rendered with\n" +
+		"      --load-mode <mode>    where the loaded PDF files are kept: auto, memory,\n" +
+		"                            mixed or temp-file (auto by default: files larger\n" +
+		"                            than the threshold use temporary files)\n" +
+		"      --load-threshold <mb> the size of the files loaded into memory in auto\n" +
+		"                            mode, the memory used in mixed mode (64 by default)\n" +
+		"      --keep-images         save the pages as PNG images\n" +
+		"      --no-text-layer       recognize the pages that already have text too\n" +
+		"      --watch <directory>   process the PDF files copied to <directory>/inbox\n" +
+		"                            until stopped (see the README for the layout)\n" +
+		"      --jobs <n>            the number of documents processed at the same\n" +
+		"                            time in --watch mode (1 by default)\n" +
+		"      --no-cache            always perform OCR, even on pages recognized before\n" +
+		"      --docx4j              build the Word document with docx4j at the end\n" +
+		"                            instead of writing it while processing\n" +
+		"      --no-orientation      don't detect and correct the orientation of pages\n" +
+		"      --metrics             save the timing of every page and stage next to\n" +
+		"                            the Word document (<name>.metrics.json and .csv)\n" +
+		"  -q, --quiet               don't write the log to the standard error\n" +
+		"  -h, --help                show this help\n" +
+		"\n" +
+		"Exit status: 0 if every document has been processed, 1 if any of them\n" +
+		"failed, 2 on invalid arguments, 3 if the training data is missing and\n" +
+		"130 if the process has been interrupted.\n";
+
+	private final ProcessingOptions options = new ProcessingOptions();
+	private final List<String> inputs = new ArrayList<>();
+	private String languageCode = "eng";
+	private File watchDirectory = null;
+	private int jobs = 1;
+	private boolean quiet = false;
+	private boolean help = false;
+
+	private final AtomicBoolean cancelled = new AtomicBoolean(false);
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	public static int run(String[] args) {
+		// Rendering uses AWT, which must not try to connect to a display
+		System.setProperty("java.awt.headless", "true");
+
+		var cli = new Cli();
+
+		try {
+			cli.parseArguments(args);
+		}
+		catch (IllegalArgumentException iae) {
+			System.err.format("Error: %s\n\n%s", iae.getMessage(), USAGE);
+			return EXIT_USAGE;
+		}
+
+		if (cli.help) {
+			System.err.print(USAGE);
+			return EXIT_OK;
+		}
+
+		try {
+			if (cli.watchDirectory != null)
+				return cli.watch();
+
+			return cli.processAll();
+		}
+		finally {
+			cli.finished.countDown();
+		}
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+
+			switch (arg) {
+				case "-l": case "--language":
+					languageCode = trainingDataCodes(value(args, ++i, arg));
+					break;
+				case "-o": case "--output":
+					options.setOutputDirectory(new File(value(args, ++i, arg)));
+					break;
+				case "-w": case "--workers":
+					options.setOcrWorkers(intValue(args, ++i, arg));
+					break;
+				case "--render-workers":
+					options.setRenderWorkers(intValue(args, ++i, arg));
+					break;
+				case "-p": case "--pages":
+					options.setPageSelection(PageSelection.parse(value(args, ++i, arg)));
+					break;
+				case "--colors":
+					options.setRenderMode(renderModeValue(value(args, ++i, arg)));
+					break;
+				case "--min-dpi":
+					options.setMinDpi(intValue(args, ++i, arg));
+					break;
+				case "--max-dpi":
+					options.setMaxDpi(intValue(args, ++i, arg));
+					break;
+				case "--load-mode":
+					options.setLoadMode(loadModeValue(value(args, ++i, arg)));
+					break;
+				case "--load-threshold":
+					options.setLoadThresholdBytes(intValue(args, ++i, arg) * 1024L * 1024);
+					break;
+				case "--keep-images":
+					options.setKeepImages(true);
+					break;
+				case "--no-text-layer":
+					options.setUseTextLayer(false);
+					break;
+				case "--no-cache":
+					options.setUseOcrCache(false);
+					break;
+				case "--docx4j":
+					options.setStreamWordExport(false);
+					break;
+				case "--no-orientation":
+					options.setDetectOrientation(false);
+					break;
+				case "--metrics":
+					options.setSaveMetrics(true);
+					break;
+				case "--watch":
+					watchDirectory = new File(value(args, ++i, arg));
+					break;
+				case "--jobs":
+					jobs = Math.max(1, intValue(args, ++i, arg));
+					break;
+				case "-q": case "--quiet":
+					quiet = true;
+					break;
+				case "-h": case "--help":
+					help = true;
+					break;
+				default:
+					if (arg.startsWith("-"))
+						throw new IllegalArgumentException(String.format("Unknown option: %s", arg));
+
+					inputs.add(arg);
+			}
+		}
+
+		if (help)
+			return;
+
+		if (watchDirectory != null) {
+			if (!inputs.isEmpty())
+				throw new IllegalArgumentException("No PDF files can be given in --watch mode");
+
+			if (options.getOutputDirectory() != null)
+				throw new IllegalArgumentException("The output directory can't be set in --watch mode");
+		}
+		else if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("No PDF files or directories given");
+		}
+	}
+
+	private static String value(String[] args, int index, String option) {
+		if (index >= args.length)
+			throw new IllegalArgumentException(String.format("Missing value of %s", option));
+
+		return args[index];
+	}
+
+	private static int intValue(String[] args, int index, String option) {
+		String value = value(args, index, option);
+
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(String.format("Invalid number for %s: %s", option, value));
+		}
+	}
+
+	private static RenderMode renderModeValue(String value) {
+		try {
+			return RenderMode.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException(String.format("Invalid colors: %s", value));
+		}
+	}
+
+	private static LoadMode loadModeValue(String value) {
+		try {
+			return LoadMode.valueOf(value.replace('-', '_').toUpperCase(Locale.ROOT));
+		}
+		catch (IllegalArgumentException iae) {
+			throw new IllegalArgumentException(String.format("Invalid load mode: %s", value));
+		}
+	}
+
+	private int processAll() {
+		List<File> pdfFiles;
+
+		try {
+			pdfFiles = findPdfFiles();
+		}
+		catch (IOException ioe) {
+			System.err.format("Error: %s\n", ioe.getMessage());
+			return EXIT_USAGE;
+		}
+
+		if (pdfFiles.isEmpty()) {
+			System.err.println("Error: No PDF files found");
+			return EXIT_USAGE;
+		}
+
+		if (!checkTrainedData())
+			return EXIT_SETUP;
+
+		var outputDirectory = options.getOutputDirectory();
+
+		if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			System.err.format("Error: Could not create the output directory: %s\n", outputDirectory);
+			return EXIT_SETUP;
+		}
+
+		Language documentLanguage = documentLanguage();
+
+		// Initialized while the first document is being loaded, and kept for the next ones
+		EngineCache.getDefault().warmUp(documentLanguage.getAlpha3(), options.getOcrWorkers());
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::cancel));
+
+		int failed = 0;
+
+		for (int i = 0; i < pdfFiles.size() && !cancelled.get(); ++i) {
+			File pdfFile = pdfFiles.get(i);
+			long start = System.nanoTime();
+
+			emit(
+				String.format(
+					"{\"event\":\"start\",\"file\":%s,\"index\":%d,\"total\":%d}",
+					Json.quote(pdfFile.getPath()), i + 1, pdfFiles.size()
+				)
+			);
+
+			try {
+				var listener = new ConsoleListener(pdfFile);
+				File exportFile = new Pipeline(pdfFile, documentLanguage, options, listener).run();
+
+				if (exportFile != null) {
+					emit(
+						String.format(
+							Locale.ROOT,
+							"{\"event\":\"done\",\"file\":%s,\"output\":%s,\"seconds\":%.3f}",
+							Json.quote(pdfFile.getPath()), Json.quote(exportFile.getPath()),
+							(System.nanoTime() - start) / 1e9
+						)
+					);
+				}
+			}
+			catch (Exception e) {
+				failed += 1;
+
+				System.err.format("Error processing %s: %s\n", pdfFile, e);
+				emit(
+					String.format(
+						"{\"event\":\"error\",\"file\":%s,\"message\":%s}",
+						Json.quote(pdfFile.getPath()), Json.quote(e.toString())
+					)
+				);
+			}
+		}
+
+		if (cancelled.get()) {
+			emit("{\"event\":\"cancelled\"}");
+			return EXIT_CANCELLED;
+		}
+
+		emit(
+			String.format(
+				"{\"event\":\"finished\",\"succeeded\":%d,\"failed\":%d}",
+				pdfFiles.size() - failed, failed
+			)
+		);
+
+		return failed > 0 ? EXIT_FAILED : EXIT_OK;
+	}
+
+	/**
+	 * Processes the documents copied to the inbox of the watched directory
+	 * until the application is stopped.
+	 */
+	private int watch() {
+		if (!checkTrainedData())
+			return EXIT_SETUP;
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::cancel));
+
+		try {
+			new WatchFolder(
+				watchDirectory.toPath(), documentLanguage(), options, jobs,
+				new ConsoleListener(watchDirectory)
+			).run();
+		}
+		catch (Exception e) {
+			System.err.format("Error: %s\n", e);
+			return EXIT_SETUP;
+		}
+
+		return cancelled.get() ? EXIT_CANCELLED : EXIT_OK;
+	}
+
+	private Language documentLanguage() {
+		return LanguageCodes
+			.ofAlpha3(languageCode)
+			.orElse(new Language(languageCode, languageCode, "<na>"));
+	}
+
+	/**
+	 * The codes of the training data of the languages given on the command
+	 * line (e.g. deu+eng for German+en). A language can be given by its
+	 * ISO 639-2 code (bibliographic or terminologic), its ISO 639-1 code,
+	 * its name or the start of its name, regardless of case. What is not a
+	 * language (e.g. chi_sim or script/Latin) is used as it is.
+	 *
+	 * @throws IllegalArgumentException if the start of a name fits several
+	 *         languages
+	 */
+	static String trainingDataCodes(String languages) {
+		var codes = new StringJoiner("+");
+
+		for (var language: languages.split("\\+"))
+			codes.add(trainingDataCode(language.strip()));
+
+		return codes.toString();
+	}
+
+	private static String trainingDataCode(String language) {
+		Optional<Language> found = LanguageCodes
+			.ofAlpha3Terminologic(language.toLowerCase(Locale.ROOT))
+			.or(() -> LanguageCodes.ofAlpha2(language.toLowerCase(Locale.ROOT)))
+			.or(() -> LanguageCodes.ofName(language));
+
+		if (found.isPresent())
+			return found.get().getAlpha3();
+
+		var candidates = LanguageCodes.withNamePrefix(language);
+		var codes = candidates.stream().map(Language::getAlpha3).distinct().collect(Collectors.toList());
+
+		if (codes.size() == 1)
+			return codes.get(0);
+
+		if (codes.size() > 1) {
+			var names = new StringJoiner(", ");
+			candidates.stream()
+				.limit(MAX_LISTED_LANGUAGES)
+				.forEach(candidate -> names.add(String.format("%s: %s", candidate.getName(), candidate.getAlpha3())));
+
+			if (candidates.size() > MAX_LISTED_LANGUAGES)
+				names.add("...");
+
+			throw new IllegalArgumentException(String.format("Ambiguous language: %s (%s)", language, names));
+		}
+
+		return language;
+	}
+
+	private boolean checkTrainedData() {
+		String missingLanguage = findMissingTrainedData(languageCode);
+
+		if (missingLanguage != null) {
+			System.err.format(
+				"Error: tessdata/%s.traineddata is missing. Language files can be downloaded from: " +
+				"https://github.com/tesseract-ocr/tessdata\n",
+				missingLanguage
+			);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The files given and the PDF files in the directories given (not
+	 * recursively), in the order of the arguments and by name within a
+	 * directory.
+	 */
+	private List<File> findPdfFiles() throws IOException {
+		var pdfFiles = new ArrayList<File>();
+
+		for (var input: inputs) {
+			Path path = Paths.get(input);
+
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> files = Files.list(path)) {
+					pdfFiles.addAll(
+						files
+							.filter(file -> !Files.isDirectory(file))
+							.filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf"))
+							.sorted()
+							.map(Path::toFile)
+							.collect(Collectors.toList())
+					);
+				}
+			}
+			else if (Files.exists(path)) {
+				pdfFiles.add(path.toFile());
+			}
+			else {
+				throw new IOException(String.format("No such file or directory: %s", input));
+			}
+		}
+
+		return pdfFiles;
+	}
+
+	/**
+	 * @return the first language of the language code (e.g. eng+deu) whose
+	 *         training data is missing, or null if all of them are present
+	 */
+	static String findMissingTrainedData(String languageCode) {
+		for (var language: languageCode.split("\\+")) {
+			if (!Files.isRegularFile(Paths.get("tessdata", language + ".traineddata")))
+				return language;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Called when the JVM is shutting down (e.g. on Ctrl+C): the current
+	 * document is cancelled and the workers get a few seconds to stop.
+	 */
+	private void cancel() {
+		cancelled.set(true);
+
+		try {
+			finished.await(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static synchronized void emit(String json) {
+		System.out.println(json);
+		System.out.flush();
+	}
+
+	private class ConsoleListener implements ProcessListener {
+		private final File pdfFile;
+		private long lastPermille = -1;
+
+		ConsoleListener(File pdfFile) {
+			this.pdfFile = pdfFile;
+		}
+
+		@Override
+		public void log(String message) {
+			if (!quiet)
+				System.err.println(message);
+		}
+
+		/**
+		 * Only reports the progress if it has grown (the workers report
+		 * concurrently, so a smaller value may arrive late).
+		 */
+		@Override
+		public synchronized void progress(long workDone, long max) {
+			long permille = max > 0 ? 1000 * workDone / max : 0;
+
+			if (permille > lastPermille) {
+				lastPermille = permille;
+				emit(
+					String.format(
+						Locale.ROOT,
+						"{\"event\":\"progress\",\"file\":%s,\"progress\":%.3f}",
+						Json.quote(pdfFile.getPath()), permille / 1000.0
+					)
+				);
+			}
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled.get();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.h119.transcript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The pages of a document as they go through the processes working on it:
+ * the image file of every rendered page, the rotation to apply to it before
+ * OCR, the text of every page that has been recognized or extracted so far
+ * and the pages that should be checked by the user (pages are numbered
+ * from 0).
+ *
+ * A page is only handled by one worker at a time and the results are read
+ * after the workers have finished, so the arrays are not synchronized.
+ */
+class DocumentPages {
+
+	private String[] imageFiles = new String[0];
+	private String[] texts = new String[0];
+	private boolean[] needsReview = new boolean[0];
+	private int[] rotations = new int[0];
+
+	public DocumentPages() {}
+
+	public DocumentPages(int pageCount) {
+		setPageCount(pageCount);
+	}
+
+	public void setPageCount(int pageCount) {
+		imageFiles = new String[pageCount];
+		texts = new String[pageCount];
+		needsReview = new boolean[pageCount];
+		rotations = new int[pageCount];
+	}
+
+	public int getPageCount() {
+		return texts.length;
+	}
+
+	/**
+	 * @return the image file of the page or null if it hasn't been rendered
+	 */
+	public String getImageFile(int page) {
+		return imageFiles[page];
+	}
+
+	public void setImageFile(int page, String imageFile) {
+		imageFiles[page] = imageFile;
+	}
+
+	/**
+	 * The image files of the rendered pages in page order.
+	 */
+	public List<String> getImageFiles() {
+		var result = new ArrayList<String>();
+
+		for (var imageFile: imageFiles) {
+			if (imageFile != null)
+				result.add(imageFile);
+		}
+
+		return result;
+	}
+
+	/**
+	 * The clockwise rotation (0, 90, 180 or 270 degrees) the image of the
+	 * page is turned by before OCR. The image file itself is not rotated.
+	 */
+	public int getRotation(int page) {
+		return rotations[page];
+	}
+
+	public void setRotation(int page, int degrees) {
+		rotations[page] = Math.floorMod(degrees, 360);
+	}
+
+	public void rotate(int page, int degrees) {
+		setRotation(page, rotations[page] + degrees);
+	}
+
+	/**
+	 * Whether the page should be checked by the user (e.g. because its
+	 * orientation is uncertain).
+	 */
+	public boolean needsReview(int page) {
+		return needsReview[page];
+	}
+
+	public void setNeedsReview(int page, boolean needsReview) {
+		this.needsReview[page] = needsReview;
+	}
+
+	/**
+	 * The pages that should be checked by the user in page order.
+	 */
+	public List<Integer> getPagesToReview() {
+		var result = new ArrayList<Integer>();
+
+		for (int page = 0; page < needsReview.length; ++page) {
+			if (needsReview[page])
+				result.add(page);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the text of the page or null if it isn't known yet
+	 */
+	public String getText(int page) {
+		return texts[page];
+	}
+
+	public void setText(int page, String text) {
+		texts[page] = text;
+	}
+
+	public boolean hasText(int page) {
+		return texts[page] != null;
+	}
+
+	/**
+	 * The text of every page in page order.
+	 */
+	public String[] getTexts() {
+		return texts;
+	}
+}
@@ -0,0 +1,286 @@
+package com.h119.transcript;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.tesseract.TessBaseAPI;
+
+/**
+ * Tesseract engines that stay initialized between the documents, so that
+ * only the first document of a language pays for loading its training data
+ * (which takes seconds with the best models, more than the OCR of a short
+ * document).
+ *
+ * A TesseractPool takes its engines from the cache and gives them back when
+ * it's closed. The engines of the language chosen in the window (or on the
+ * command line) are initialized in the background by warmUp() before the
+ * first document is opened. An engine that hasn't been used for the time
+ * given by the transcript.ocr.engineIdleSeconds system property (5 minutes
+ * by default) is ended, so that its memory is released.
+ *
+ * The number of idle engines is limited for all the languages together:
+ * when an engine is given back to a full cache, the engines of the least
+ * recently used language are ended first (so switching between languages
+ * doesn't pile up engines of every language).
+ */
+class EngineCache {
+
+	public static final String IDLE_TIMEOUT_PROPERTY = "transcript.ocr.engineIdleSeconds";
+
+	private static final long DEFAULT_IDLE_SECONDS = 5 * 60;
+
+	private static EngineCache defaultCache;
+
+	/**
+	 * An engine that is not in use and since when.
+	 */
+	private static class IdleEngine {
+		final TessBaseAPI api;
+		final long idleSince;
+
+		IdleEngine(TessBaseAPI api, long idleSince) {
+			this.api = api;
+			this.idleSince = idleSince;
+		}
+	}
+
+	/**
+	 * The idle engines of every language (the most recently used engine
+	 * first), in access order: the least recently used language first.
+	 */
+	private final Map<String, Deque<IdleEngine>> idleEngines = new LinkedHashMap<>(16, 0.75f, true);
+	private int idleEngineCount;
+
+	/** The number of engines being initialized by warmUp() per language. */
+	private final Map<String, Integer> warmingUp = new HashMap<>();
+
+	private final int maxIdleEngines;
+	private final long idleTimeoutNanos;
+	private final ScheduledExecutorService evictor;
+
+	/**
+	 * @param maxIdleEngines the number of idle engines kept (of all the
+	 *        languages together), the least recently used ones beyond that
+	 *        are ended
+	 */
+	public EngineCache(int maxIdleEngines, long idleTimeoutSeconds) {
+		this.maxIdleEngines = Math.max(1, maxIdleEngines);
+		this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(1, idleTimeoutSeconds));
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			var thread = new Thread(runnable, "transcript-engine-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long period = Math.min(60, Math.max(1, idleTimeoutSeconds / 2));
+		evictor.scheduleWithFixedDelay(this::evictIdleEngines, period, period, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * The cache shared by every process of the application, keeping as
+	 * many idle engines as there are processors.
+	 */
+	public static synchronized EngineCache getDefault() {
+		if (defaultCache == null)
+			defaultCache = new EngineCache(Runtime.getRuntime().availableProcessors(), idleTimeoutSeconds());
+
+		return defaultCache;
+	}
+
+	/**
+	 * An idle engine of the language, or a newly initialized one if there's
+	 * none.
+	 *
+	 * @throws RuntimeException if the engine could not be initialized
+	 *         (e.g. the training data is missing)
+	 */
+	public TessBaseAPI take(String languageCode) {
+		IdleEngine idleEngine;
+
+		synchronized (this) {
+			var engines = idleEngines.get(languageCode);
+			idleEngine = engines != null ? engines.pollFirst() : null;
+
+			if (idleEngine != null) {
+				idleEngineCount -= 1;
+
+				if (engines.isEmpty())
+					idleEngines.remove(languageCode);
+			}
+		}
+
+		if (idleEngine != null)
+			return idleEngine.api;
+
+		return initialize(languageCode);
+	}
+
+	/**
+	 * The number of idle engines of the language, the ones a TesseractPool
+	 * of the language gets without initializing them.
+	 */
+	public synchronized int idleCount(String languageCode) {
+		var engines = idleEngines.get(languageCode);
+
+		return engines != null ? engines.size() : 0;
+	}
+
+	/**
+	 * Gives back an engine taken from the cache (one that is not in use any
+	 * more). If the cache is full, the least recently used idle engines are
+	 * ended (the oldest ones of the least recently used language).
+	 */
+	public void give(String languageCode, TessBaseAPI api) {
+		api.Clear();
+
+		List<TessBaseAPI> evicted = new ArrayList<>();
+
+		synchronized (this) {
+			idleEngines
+				.computeIfAbsent(languageCode, code -> new ArrayDeque<>())
+				.addFirst(new IdleEngine(api, System.nanoTime()));
+			idleEngineCount += 1;
+
+			var languages = idleEngines.values().iterator();
+
+			while (idleEngineCount > maxIdleEngines) {
+				var engines = languages.next();
+
+				while (!engines.isEmpty() && idleEngineCount > maxIdleEngines) {
+					evicted.add(engines.pollLast().api);
+					idleEngineCount -= 1;
+				}
+
+				if (engines.isEmpty())
+					languages.remove();
+			}
+		}
+
+		evicted.forEach(EngineCache::end);
+	}
+
+	/**
+	 * Initializes engines of the language in the background, so that it
+	 * has count idle engines (at most as many as are kept), counting the
+	 * ones a previous call is still initializing. Nothing happens if they
+	 * can't be initialized, the error is reported when a document is
+	 * processed.
+	 */
+	public void warmUp(String languageCode, int count) {
+		int missingEngines;
+
+		synchronized (this) {
+			missingEngines =
+				Math.min(count, maxIdleEngines) - idleCount(languageCode) - warmingUp.getOrDefault(languageCode, 0);
+
+			if (missingEngines <= 0)
+				return;
+
+			warmingUp.merge(languageCode, missingEngines, Integer::sum);
+		}
+
+		JobScheduler.getDefault().start(() -> {
+			int remaining = missingEngines;
+
+			try {
+				// One by one, so that a document started meanwhile can use the first ones already
+				while (remaining > 0) {
+					give(languageCode, initialize(languageCode));
+					warmedUp(languageCode, 1);
+					remaining -= 1;
+				}
+			}
+			catch (RuntimeException re) {
+				// Reported when a document of the language is processed
+			}
+			finally {
+				warmedUp(languageCode, remaining);
+			}
+		});
+	}
+
+	private synchronized void warmedUp(String languageCode, int engines) {
+		warmingUp.computeIfPresent(languageCode, (code, count) -> count > engines ? count - engines : null);
+	}
+
+	/**
+	 * Ends the idle engines.
+	 */
+	public void clear() {
+		var engines = new ArrayList<TessBaseAPI>();
+
+		synchronized (this) {
+			for (var languageEngines: idleEngines.values()) {
+				for (var idleEngine: languageEngines)
+					engines.add(idleEngine.api);
+			}
+
+			idleEngines.clear();
+			idleEngineCount = 0;
+		}
+
+		engines.forEach(EngineCache::end);
+	}
+
+	private void evictIdleEngines() {
+		long now = System.nanoTime();
+		List<TessBaseAPI> evicted = new ArrayList<>();
+
+		synchronized (this) {
+			for (var engines: idleEngines.values()) {
+				// The least recently used engines are at the end
+				while (!engines.isEmpty() && now - engines.peekLast().idleSince > idleTimeoutNanos) {
+					evicted.add(engines.pollLast().api);
+					idleEngineCount -= 1;
+				}
+			}
+
+			idleEngines.values().removeIf(Deque::isEmpty);
+		}
+
+		evicted.forEach(EngineCache::end);
+	}
+
+	private static TessBaseAPI initialize(String languageCode) {
+		TessBaseAPI api = new TessBaseAPI();
+		int errorCode = api.Init("tessdata", languageCode);
+
+		if (errorCode != 0) {
+			api.close();
+			throw new RuntimeException(
+				String.format("Could not initialize tesseract -- error code: %d", errorCode)
+			);
+		}
+
+		return api;
+	}
+
+	private static void end(TessBaseAPI api) {
+		api.End();
+		api.close();
+	}
+
+	private static long idleTimeoutSeconds() {
+		String value = System.getProperty(IDLE_TIMEOUT_PROPERTY);
+
+		if (value != null) {
+			try {
+				return Math.max(1, Long.parseLong(value.trim()));
+			}
+			catch (NumberFormatException nfe) {
+				System.err.format("Invalid idle timeout of the engines: %s\n", value);
+			}
+		}
+
+		return DEFAULT_IDLE_SECONDS;
+	}
+}
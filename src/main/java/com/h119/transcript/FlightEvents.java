@@ -0,0 +1,169 @@
+package com.h119.transcript;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of the processing of the pages, so that
+ * a recording (e.g. java -XX:StartFlightRecording ...) shows which page the
+ * time spent in PDFBox, ImageIO, Tesseract and docx4j went to.
+ *
+ * The events are meant to be left on: they don't record stack traces, and
+ * their fields are only computed if shouldCommit() says that the event is
+ * recorded (the JIT removes the rest when no recording is running). Every
+ * use follows the same pattern:
+ *
+ * <pre>
+ * var event = new FlightEvents.Render();
+ * event.begin();
+ * ... // the work
+ * if (event.shouldCommit()) {
+ *     event.page = page;
+ *     ...
+ *     event.commit();
+ * }
+ * </pre>
+ *
+ * The pages are numbered from 1 in the events, 0 if the page is not known.
+ */
+class FlightEvents {
+
+	private static final String CATEGORY = "Transcript";
+
+	private FlightEvents() {}
+
+	@Name("com.h119.transcript.Render")
+	@Label("Page Render")
+	@Description("A page of a PDF file rendered by PDFBox")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class Render extends Event {
+		@Label("Page")
+		int page;
+
+		@Label("DPI")
+		int dpi;
+
+		@Label("Width")
+		int width;
+
+		@Label("Height")
+		int height;
+
+		@Label("Pixel Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.h119.transcript.ImageEncode")
+	@Label("Image Encode")
+	@Description("A rendered page saved as a PNG file")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class ImageEncode extends Event {
+		@Label("Page")
+		int page;
+
+		@Label("DPI")
+		int dpi;
+
+		@Label("Width")
+		int width;
+
+		@Label("Height")
+		int height;
+
+		@Label("File")
+		String file;
+
+		@Label("File Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.h119.transcript.ImageDecode")
+	@Label("Image Decode")
+	@Description("A page image read for OCR or for the preview")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class ImageDecode extends Event {
+		@Label("Page")
+		int page;
+
+		@Label("Width")
+		int width;
+
+		@Label("Height")
+		int height;
+
+		@Label("File")
+		String file;
+
+		@Label("File Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.h119.transcript.Ocr")
+	@Label("OCR")
+	@Description("A page recognized by Tesseract (cached pages are not recognized)")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class Ocr extends Event {
+		@Label("Page")
+		int page;
+
+		@Label("DPI")
+		int dpi;
+
+		@Label("Language")
+		String language;
+
+		@Label("Width")
+		int width;
+
+		@Label("Height")
+		int height;
+
+		@Label("Characters")
+		int characters;
+	}
+
+	@Name("com.h119.transcript.DocxBuild")
+	@Label("Word Document Build")
+	@Description("The paragraphs of a Word document built in memory")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class DocxBuild extends Event {
+		@Label("Pages")
+		int pages;
+
+		@Label("Paragraphs")
+		int paragraphs;
+
+		@Label("Characters")
+		long characters;
+	}
+
+	@Name("com.h119.transcript.DocxSave")
+	@Label("Word Document Save")
+	@Description("A Word document written to its file")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class DocxSave extends Event {
+		@Label("Pages")
+		int pages;
+
+		@Label("File")
+		String file;
+
+		@Label("File Size")
+		@DataAmount
+		long bytes;
+	}
+}
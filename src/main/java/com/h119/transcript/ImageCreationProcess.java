@@ -1,86 +1,276 @@
 package com.h119.transcript;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javafx.application.Platform;
-import javafx.concurrent.Task;
-import javafx.scene.control.Button;
-import javafx.scene.control.TextArea;
-
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.tools.imageio.ImageIOUtil;
-
-class ImageCreationProcess extends Task<Void> {
+class ImageCreationProcess extends ProcessTask {
 
 	private final File pdfFile;
-	private final ArrayList<String> imageFiles;
-	private final TextArea textArea;
+	private final DocumentPages pages;
+	private final ProcessingOptions options;
+	private final ProcessMetrics metrics;
 
+	/**
+	 * The pages are rendered by at most options.getRenderWorkers() threads
+	 * of the JobScheduler in parallel (every render stage uses its own copy
+	 * of the document as PDFRenderer is not thread-safe) and saved on its
+	 * I/O executor. Only the selected pages are rendered (see
+	 * PageSelection). The image files (and the text of the pages that have
+	 * a text layer) are stored in pages.
+	 *
+	 * If the orientation of the pages is detected, the pages are saved
+	 * upright and only the pages whose orientation is uncertain need to be
+	 * reviewed, otherwise every page does.
+	 *
+	 * The timing of the pages is recorded in metrics, which the OcrProcess
+	 * of the document reports when it's done.
+	 */
 	public ImageCreationProcess(
-		File pdfFile, ArrayList<String> imageFiles,
-		TextArea textArea
+		File pdfFile, DocumentPages pages,
+		UiEventBus events, ProcessingOptions options, ProcessMetrics metrics
 	) {
+		super(events);
 		this.pdfFile = pdfFile;
-		this.imageFiles = imageFiles;
-		this.textArea = textArea;
+		this.pages = pages;
+		this.options = options;
+		this.metrics = metrics;
 	}
 
 	@Override
 	public Void call() throws InterruptedException {
 		try {
-			String pdfFilePath = pdfFile.getCanonicalPath();
-			String fileNoExtension = pdfFilePath.substring(0, pdfFilePath.lastIndexOf("."));
-			var documentLines = new ArrayList<String>();
+			String fileNoExtension = options.getOutputBase(pdfFile);
 
-			PDDocument document = PDDocument.load(pdfFile);
-			PDFRenderer pdfRenderer = new PDFRenderer(document);
-			int documentPages = document.getNumberOfPages();
+			LoadMode loadMode = PageRenderer.loadMode(pdfFile, options);
 
-			updateProgress(0, 1000);
+			if (loadMode != LoadMode.MEMORY)
+				log(String.format("The document is loaded into: %s", loadMode));
 
-			Platform.runLater(() -> {
-				textArea.appendText(String.format("The document consists of %d pages\n", documentPages));
-			});
-			Platform.runLater(() -> {textArea.appendText("Saving the pages as PNG images...\n");});
+			PageRenderer firstRenderer = PageRenderer.open(pdfFile, options);
 
-			for (int page = 0; page < documentPages; ++page) {
-				BufferedImage bim = pdfRenderer.renderImageWithDPI(page, 300, ImageType.RGB);
+			// Every render stage needs its own copy of the document, the first one is opened above
+			var renderers = new ConcurrentLinkedQueue<PageRenderer>(List.of(firstRenderer));
+			var openedRenderers = new ConcurrentLinkedQueue<PageRenderer>(List.of(firstRenderer));
 
-				String imageFileName = fileNoExtension + "-" + (page + 1) + ".png";
+			try {
+				int documentPages = firstRenderer.getNumberOfPages();
+				int workers = Math.max(1, Math.min(options.getRenderWorkers(), documentPages));
 
-				Platform.runLater(() -> {textArea.appendText(String.format("Saving %s...\n", imageFileName));});
+				progress(0, 1000);
 
-				imageFiles.add(imageFileName);
-				ImageIOUtil.writeImage(bim, imageFileName, 300);
+				PageSelection selection = options.getPageSelection();
+				selection.checkSelected(documentPages);
 
-				if (isCancelled()) {
-					Platform.runLater(() -> {textArea.appendText("Cancelled\n");});
-					updateProgress(0, 1000);
-					document.close();
-					return null;
-				}
+				int selectedPages = selection.count(documentPages);
+				workers = Math.min(workers, selectedPages);
+
+				log(String.format("The document consists of %d pages", documentPages));
+
+				if (!selection.isAll())
+					log(String.format("Processing the selected pages (%s): %d pages", selection, selectedPages));
+
+				log(String.format("Saving the pages as PNG images (%d workers)...", workers));
+
+				pages.setPageCount(documentPages);
+
+				var scheduler = JobScheduler.getDefault();
+				Executor render = JobScheduler.limit(scheduler.cpu(), workers);
+
+				// The rendered images waiting to be saved are limited as well, also by the memory budget
+				var pagesInFlight = new Semaphore(2 * workers);
+				var budget = MemoryBudget.getDefault();
+				var largestPage = new AtomicReference<>(MemoryBudget.Footprint.estimate(options));
+				var pagesDone = new AtomicInteger(0);
+
+				// The scope is closed first, it waits for the stages that still use the detector
+				try (
+					var detector = openOrientationDetector(workers);
+					var scope = scheduler.openScope()
+				) {
+					var results = new ArrayList<CompletableFuture<Void>>();
+
+					for (int page = 0; page < documentPages && !isCancelled() && !scope.isCancelled(); ++page) {
+						if (!selection.contains(page))
+							continue;
+
+						int currentPage = page;
+
+						pagesInFlight.acquire();
+
+						MemoryBudget.Reservation reservation;
 
-				updateProgress(300 * (page + 1) / documentPages, 1000);
+						try {
+							reservation = budget.reserve(largestPage.get());
+						}
+						catch (InterruptedException ie) {
+							pagesInFlight.release();
+							throw ie;
+						}
+
+						var result = scope
+							.submit(render, () -> renderPage(currentPage, renderers, openedRenderers, detector))
+							.thenCompose(pageImage -> {
+								if (pageImage == null) {
+									reservation.resize(MemoryBudget.Footprint.NONE);
+									return CompletableFuture.completedFuture(null);
+								}
+
+								// The next pages are expected to be as large as the largest one so far
+								var footprint = MemoryBudget.Footprint.of(pageImage);
+								reservation.resize(footprint);
+								largestPage.accumulateAndGet(footprint, MemoryBudget.Footprint::max);
+
+								return scope.submit(scheduler.io(), () -> {
+									saveImage(currentPage, pageImage, fileNoExtension);
+									return null;
+								});
+							})
+							.thenRun(() -> progress(300 * pagesDone.incrementAndGet() / selectedPages, 1000));
+
+						result.whenComplete((value, exception) -> {
+							reservation.close();
+							pagesInFlight.release();
+						});
+						results.add(result);
+					}
+
+					scope.await(results, this);
+				}
+			}
+			finally {
+				// The scope has waited for the stages, so the documents are not in use
+				for (var renderer: openedRenderers)
+					renderer.close();
 			}
 
-			document.close();
+			if (isCancelled()) {
+				log("Cancelled");
+				progress(0, 1000);
+			}
 		}
-		catch (Exception e) {
-			Platform.runLater(() -> {textArea.appendText(String.format("Error: %s\n", e));});
+		catch (Throwable e) {
+			logFailure(e);
 		}
 
 		return null;
 	}
 
-	@Override
-	protected void done() {
-		super.done();
+	/**
+	 * @return the detector or null if the orientation is not to be detected
+	 *         (or can't be, because the osd training data is missing)
+	 */
+	private OrientationDetector openOrientationDetector(int size) {
+		if (!options.isDetectOrientation())
+			return null;
+
+		if (!OrientationDetector.isAvailable()) {
+			log(
+				"tessdata/osd.traineddata is missing, so the orientation of the pages is not detected. " +
+				"It can be downloaded from: https://github.com/tesseract-ocr/tessdata"
+			);
+			return null;
+		}
+
+		return new OrientationDetector(size);
+	}
+
+	/**
+	 * Renders a page (on one of the CPU threads of the JobScheduler) and
+	 * turns it upright if its orientation is detected. The pages that have
+	 * a text layer are not rendered, their text is extracted instead.
+	 *
+	 * @return the image to be saved or null if there's none
+	 */
+	private PageImage renderPage(
+		int page, Queue<PageRenderer> renderers, Queue<PageRenderer> openedRenderers,
+		OrientationDetector detector
+	) throws IOException, InterruptedException {
+		if (isCancelled())
+			return null;
+
+		PageRenderer renderer = takeRenderer(renderers, openedRenderers);
+
+		try {
+			String text = options.isUseTextLayer()
+				? metrics.record(page, ProcessMetrics.Stage.EXTRACT_TEXT, () -> renderer.extractText(page))
+				: null;
+
+			if (text != null) {
+				log(String.format("Page %d has a text layer, it is extracted instead of recognized", page + 1));
+				pages.setText(page, text);
+				return null;
+			}
+
+			PageImage pageImage;
+
+			try (var timer = metrics.time(page, ProcessMetrics.Stage.RENDER)) {
+				pageImage = renderer.render(page);
+				timer.setBytes(pageImage.getPixelBytes());
+			}
+
+			if (detector == null) {
+				pages.setNeedsReview(page, true);
+				return pageImage;
+			}
+
+			OrientationDetector.PageOrientation orientation = metrics.record(
+				page, ProcessMetrics.Stage.DETECT_ORIENTATION, () -> detector.detect(PageRaster.of(pageImage))
+			);
+
+			String message = OrientationDetector.describe(page, orientation);
+
+			if (message != null)
+				log(message);
+
+			pages.setNeedsReview(page, orientation.needsReview());
+
+			return orientation.isCertain() ? pageImage.rotated(orientation.getRotation()) : pageImage;
+		}
+		finally {
+			renderers.add(renderer);
+		}
+	}
+
+	/**
+	 * A document that is not in use by another render stage, opened if
+	 * there's none.
+	 */
+	private PageRenderer takeRenderer(
+		Queue<PageRenderer> renderers, Queue<PageRenderer> openedRenderers
+	) throws IOException {
+		PageRenderer renderer = renderers.poll();
+
+		if (renderer == null) {
+			renderer = PageRenderer.open(pdfFile, options);
+			openedRenderers.add(renderer);
+		}
+
+		return renderer;
+	}
+
+	/**
+	 * Saves the image of a page (on the I/O executor of the JobScheduler).
+	 */
+	private void saveImage(int page, PageImage pageImage, String fileNoExtension) throws IOException {
+		String imageFileName = PageRenderer.imageFileName(fileNoExtension, page);
+
+		log(String.format("Saving %s...", imageFileName));
+
+		try (var timer = metrics.time(page, ProcessMetrics.Stage.WRITE_IMAGE)) {
+			PageRenderer.writeImage(page, pageImage, imageFileName);
+			timer.setBytes(new File(imageFileName).length());
+		}
+
+		pages.setImageFile(page, imageFileName);
 	}
 
 }
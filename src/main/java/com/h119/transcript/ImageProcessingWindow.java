@@ -1,21 +1,13 @@
 package com.h119.transcript;
 
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-
-import javax.imageio.ImageIO;
+import java.util.List;
 
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -32,10 +24,24 @@ import javafx.stage.Modality;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 
+/**
+ * Shows the rendered pages that need review and lets the user rotate them.
+ *
+ * A rotation is only recorded in DocumentPages: the page is shown rotated
+ * right away and its image is rotated in memory before OCR, so the image
+ * file is never rewritten.
+ *
+ * The pages are shown from screen-sized previews (see PreviewCache), which
+ * are loaded in the background, together with the neighbors of the page
+ * shown.
+ */
 class ImageProcessingWindow {
-	private final ArrayList<String> imageFiles;
+	private final DocumentPages pages;
+	private final List<Integer> reviewPages;
 	private final int imageNumber;
 	private int currentImageIndex;
+	private Image currentImageContent;
+	private final PreviewCache previews;
 
 	private Stage window;
 	private Label imagePath;
@@ -53,6 +59,9 @@ class ImageProcessingWindow {
 
 	private final static int MARGIN = 10;
 
+	/** The number of pages before and after the page shown that are loaded in advance. */
+	private final static int PREFETCHED_PAGES = 2;
+
 	private static final Rectangle2D screenBounds;
 	private static final double imageHeight;
 	private static final double imageWidth;
@@ -63,12 +72,20 @@ class ImageProcessingWindow {
 		imageWidth = screenBounds.getWidth() * 0.4;
 	}
 
-	public ImageProcessingWindow(Transcript.ThemeState themeState, ArrayList<String> imageFiles) {
-		this.imageFiles = imageFiles;
-		this.imageNumber = imageFiles.size();
+	/**
+	 * @param reviewPages the pages to show (they must have an image file)
+	 */
+	public ImageProcessingWindow(Transcript.ThemeState themeState, DocumentPages pages, List<Integer> reviewPages) {
+		this.pages = pages;
+		this.reviewPages = reviewPages;
+		this.imageNumber = reviewPages.size();
 
 		currentImageIndex = 0;
 
+		// Large enough for both orientations of a page
+		double previewSize = Math.max(imageWidth, imageHeight);
+		previews = new PreviewCache(previewSize, previewSize, PreviewCache.DEFAULT_MAX_BYTES);
+
 		window = new Stage();
 
 		window.initModality(Modality.APPLICATION_MODAL);
@@ -77,9 +94,7 @@ class ImageProcessingWindow {
 		imagePath = new Label();
 		currentImage = new ImageView();
 
-		var imageFile = imageFiles.get(currentImageIndex);
-
-		setupImage(imageFile);
+		setupImage(currentImageIndex);
 
 		imageIndexField = new TextField(String.format("%d", currentImageIndex + 1));
 
@@ -133,7 +148,8 @@ class ImageProcessingWindow {
 		HBox.setHgrow(rightSpacer, Priority.ALWAYS);
 
 		var scrollPane = new ScrollPane();
-		scrollPane.setContent(currentImage);
+		// The bounds of a Group include the rotation of the image
+		scrollPane.setContent(new Group(currentImage));
 
 		/*
 		 * The snippet below is a workaround for a JavaFX bug that makes
@@ -184,27 +200,96 @@ class ImageProcessingWindow {
 	}
 
 	public void showAndWait() {
-		window.showAndWait();
+		try {
+			window.showAndWait();
+		}
+		finally {
+			previews.close();
+		}
 	}
 
-	private void setupImage(String imageFile) {
-		try {
-			var image = new Image(new FileInputStream(imageFile));
+	/**
+	 * Shows the page at the index of reviewPages as soon as its preview is
+	 * loaded and starts loading the previews of its neighbors.
+	 */
+	private void setupImage(int index) {
+		int page = reviewPages.get(index);
 
-			imagePath.setText(imageFile);
-			currentImage.setImage(image);
+		currentImageContent = null;
+		currentImage.setImage(null);
+		imagePath.setText(String.format("%s (loading...)", pages.getImageFile(page)));
 
-			if (image.getWidth() > image.getHeight())
-				currentImage.setFitWidth(imageWidth);
+		previews.get(pages.getImageFile(page)).whenComplete((preview, exception) -> {
+			Runnable show = () -> {
+				// Another page may have been chosen in the meantime
+				if (reviewPages.get(currentImageIndex) != page)
+					return;
+
+				if (exception != null) {
+					System.err.format("Error loading file: %s\n", exception);
+					imagePath.setText(String.format("%s (could not be loaded)", pages.getImageFile(page)));
+					return;
+				}
+
+				currentImageContent = preview;
+
+				currentImage.setImage(currentImageContent);
+				currentImage.setPreserveRatio(true);
+				currentImage.setSmooth(true);
+
+				showRotation(page);
+			};
+
+			if (Platform.isFxApplicationThread())
+				show.run();
 			else
-				currentImage.setFitHeight(imageHeight);
+				Platform.runLater(show);
+		});
 
-			currentImage.setPreserveRatio(true);
-			currentImage.setSmooth(true);
+		for (int distance = 1; distance <= PREFETCHED_PAGES; ++distance) {
+			for (int neighbor: new int[] {index + distance, index - distance}) {
+				if (neighbor >= 0 && neighbor < reviewPages.size())
+					previews.prefetch(pages.getImageFile(reviewPages.get(neighbor)));
+			}
 		}
-		catch (FileNotFoundException exception) {
-			System.err.format("Error loading file: %s\n", exception);
+	}
+
+	/**
+	 * Shows the page turned by its rotation, fitting the side that is
+	 * horizontal (or vertical) on the screen.
+	 */
+	private void showRotation(int page) {
+		int rotation = pages.getRotation(page);
+
+		// Shown once it has been loaded
+		if (currentImageContent == null)
+			return;
+
+		boolean swapped = rotation % 180 != 0;
+		boolean landscape = (currentImageContent.getWidth() > currentImageContent.getHeight()) != swapped;
+
+		currentImage.setRotate(rotation);
+		currentImage.setFitWidth(0);
+		currentImage.setFitHeight(0);
+
+		if (landscape) {
+			if (swapped)
+				currentImage.setFitHeight(imageWidth);
+			else
+				currentImage.setFitWidth(imageWidth);
 		}
+		else {
+			if (swapped)
+				currentImage.setFitWidth(imageHeight);
+			else
+				currentImage.setFitHeight(imageHeight);
+		}
+
+		imagePath.setText(
+			rotation == 0 ?
+				pages.getImageFile(page) :
+				String.format("%s (rotated by %d degrees)", pages.getImageFile(page), rotation)
+		);
 	}
 
 	private void jumpToNewPage(ActionEvent e) {
@@ -225,40 +310,19 @@ class ImageProcessingWindow {
 	}
 
 	private void jumpToIndex(int newIndex) {
-		if (newIndex >= 0 && newIndex < imageFiles.size()) {
-			var path = imageFiles.get(newIndex);
-			setupImage(path);
+		if (newIndex >= 0 && newIndex < reviewPages.size()) {
 			currentImageIndex = newIndex;
+			setupImage(newIndex);
 		}
 
 		imageIndexField.setText(String.format("%d", currentImageIndex + 1));
 	}
 
 	private void rotate(ActionEvent e) {
-		try {
-			int angle = e.getSource() == rotateClockWise ? 90 : -90;
-			String imageFileName = imageFiles.get(currentImageIndex);
-
-			BufferedImage image = ImageIO.read(new File(imageFileName));
-			final double rads = Math.toRadians(angle);
-			final double sin = Math.abs(Math.sin(rads));
-			final double cos = Math.abs(Math.cos(rads));
-			final int w = (int) Math.floor(image.getWidth() * cos + image.getHeight() * sin);
-			final int h = (int) Math.floor(image.getHeight() * cos + image.getWidth() * sin);
-			final var rotatedImage = new BufferedImage(w, h, image.getType());
-			final var at = new AffineTransform();
-			at.translate(w / 2, h / 2);
-			at.rotate(rads, 0, 0);
-			at.translate(-image.getWidth() / 2, -image.getHeight() / 2);
-			final var rotateOp = new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
-			rotateOp.filter(image,rotatedImage);
-			ImageIO.write(rotatedImage, "PNG", new File(imageFileName));
-
-			setupImage(imageFileName);
-		}
-		catch (IOException ioe) {
-			System.err.format("Exception thrown while trying to rotate image: %s\n", ioe);
-			ioe.printStackTrace(System.err);
-		}
+		int angle = e.getSource() == rotateClockWise ? 90 : -90;
+		int page = reviewPages.get(currentImageIndex);
+
+		pages.rotate(page, angle);
+		showRotation(page);
 	}
 }
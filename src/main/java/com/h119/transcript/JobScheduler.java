@@ -0,0 +1,397 @@
+package com.h119.transcript;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the work of the processes on shared, bounded thread pools instead of
+ * a thread (or a thread pool) of their own:
+ *
+ * <ul>
+ *   <li>the CPU-heavy stages (rendering, orientation detection and OCR) on
+ *       one thread per processor, however many documents are processed at
+ *       the same time,</li>
+ *   <li>the I/O stages (saving images, the journal and the Word documents)
+ *       on a virtual thread per task if the JDK has them (Java 21 or
+ *       later), otherwise on a small thread pool,</li>
+ *   <li>the processes themselves, which mostly wait for their pages, on
+ *       threads of their own.</li>
+ * </ul>
+ *
+ * The stages of a page are submitted through a Scope, so that a cancelled
+ * or failed process stops every page it has in flight.
+ */
+class JobScheduler {
+
+	private static final int IO_THREADS = 4;
+
+	/** How often a Scope checks whether its process has been cancelled. */
+	private static final long CANCEL_CHECK_MILLIS = 200;
+
+	private static final JobScheduler defaultScheduler =
+		new JobScheduler(Runtime.getRuntime().availableProcessors());
+
+	private final int cpuThreads;
+	private final ExecutorService jobs;
+	private final ExecutorService cpu;
+	private final ExecutorService io;
+
+	public JobScheduler(int cpuThreads) {
+		this.cpuThreads = Math.max(1, cpuThreads);
+
+		this.jobs = Executors.newCachedThreadPool(threadFactory("transcript-job", Thread.NORM_PRIORITY));
+
+		// Below the JavaFX application thread, so that the window stays responsive
+		this.cpu = Executors.newFixedThreadPool(
+			this.cpuThreads, threadFactory("transcript-cpu", Thread.NORM_PRIORITY - 1)
+		);
+
+		this.io = newIoExecutor();
+	}
+
+	public static JobScheduler getDefault() {
+		return defaultScheduler;
+	}
+
+	public int getCpuThreads() {
+		return cpuThreads;
+	}
+
+	/**
+	 * The executor of the CPU-heavy stages.
+	 */
+	public Executor cpu() {
+		return cpu;
+	}
+
+	/**
+	 * The executor of the I/O stages.
+	 */
+	public Executor io() {
+		return io;
+	}
+
+	/**
+	 * Starts a process (e.g. a JavaFX Task, which is cancelled by
+	 * interrupting the thread running it).
+	 */
+	public void start(Runnable job) {
+		jobs.execute(job);
+	}
+
+	/**
+	 * Opens a scope for the stages of a process.
+	 */
+	public Scope openScope() {
+		return new Scope();
+	}
+
+	/**
+	 * An executor that runs the tasks on another executor, but at most
+	 * maxRunning of them at the same time. The waiting tasks don't take a
+	 * thread, so a stage of a process can be limited to a number of
+	 * workers on the shared pools.
+	 */
+	public static Executor limit(Executor executor, int maxRunning) {
+		return new LimitedExecutor(executor, Math.max(1, maxRunning));
+	}
+
+	/**
+	 * The tasks of a process. If a task fails or the scope is cancelled,
+	 * the tasks that are running are interrupted and the ones that haven't
+	 * started yet are cancelled, as well as the ones submitted afterwards.
+	 */
+	public static class Scope implements AutoCloseable {
+
+		private final Set<Thread> runningThreads = new HashSet<>();
+		private int pendingTasks = 0;
+		private boolean cancelled = false;
+		private Throwable failure = null;
+
+		private Scope() {
+		}
+
+		/**
+		 * Runs a task on an executor (see cpu() and io()) as part of the
+		 * scope.
+		 *
+		 * @return the result of the task; cancelled if the scope is
+		 */
+		public <T> CompletableFuture<T> submit(Executor executor, Callable<T> task) {
+			var result = new CompletableFuture<T>();
+
+			synchronized (this) {
+				if (cancelled) {
+					result.cancel(false);
+					return result;
+				}
+
+				pendingTasks += 1;
+			}
+
+			try {
+				executor.execute(() -> run(task, result));
+			}
+			catch (RuntimeException re) {
+				result.completeExceptionally(re);
+				taskDone();
+			}
+
+			return result;
+		}
+
+		public synchronized boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Interrupts the running tasks and cancels the others.
+		 */
+		public synchronized void cancel() {
+			if (cancelled)
+				return;
+
+			cancelled = true;
+
+			for (var thread: runningThreads)
+				thread.interrupt();
+		}
+
+		/**
+		 * Waits for the futures of the scope, cancelling the scope as soon
+		 * as the listener is cancelled.
+		 *
+		 * @throws InterruptedException if the waiting thread is interrupted
+		 *         (e.g. by Task.cancel()): the scope is cancelled and its
+		 *         tasks have stopped, the interrupt status is kept
+		 * @throws Exception the first failure of a task of the scope
+		 */
+		public void await(
+			Collection<? extends CompletableFuture<?>> futures, ProcessListener listener
+		) throws Exception {
+			var all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+
+			while (!all.isDone()) {
+				try {
+					all.get(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException te) {
+					if (listener.isCancelled())
+						cancel();
+				}
+				catch (ExecutionException | CancellationException e) {
+					// The failure that cancelled the scope is thrown below
+				}
+				catch (InterruptedException ie) {
+					cancel();
+					awaitTasks();
+					Thread.currentThread().interrupt();
+					throw ie;
+				}
+			}
+
+			Throwable firstFailure;
+
+			synchronized (this) {
+				firstFailure = failure;
+			}
+
+			if (firstFailure instanceof Exception)
+				throw (Exception) firstFailure;
+
+			if (firstFailure instanceof Error)
+				throw (Error) firstFailure;
+		}
+
+		/**
+		 * Cancels the scope and waits until none of its tasks is running,
+		 * so that the resources they use (e.g. Tesseract engines) can be
+		 * released afterwards.
+		 */
+		@Override
+		public void close() {
+			cancel();
+			awaitTasks();
+		}
+
+		/**
+		 * Waits until none of the tasks is running, even if the thread is
+		 * interrupted meanwhile (its interrupt status is kept).
+		 */
+		private synchronized void awaitTasks() {
+			boolean interrupted = false;
+
+			while (pendingTasks > 0) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		private <T> void run(Callable<T> task, CompletableFuture<T> result) {
+			Thread thread = Thread.currentThread();
+			boolean started;
+
+			synchronized (this) {
+				started = !cancelled;
+
+				if (started)
+					runningThreads.add(thread);
+			}
+
+			T value = null;
+			Throwable taskFailure = null;
+
+			if (started) {
+				try {
+					value = task.call();
+				}
+				catch (Throwable t) {
+					taskFailure = t;
+				}
+			}
+
+			synchronized (this) {
+				runningThreads.remove(thread);
+
+				// An interrupt meant for this task must not reach the next task of the thread
+				Thread.interrupted();
+
+				// Failing after cancelling is usually caused by the interrupt
+				if (taskFailure != null && !cancelled) {
+					failure = taskFailure;
+					cancel();
+				}
+			}
+
+			// The dependent stages run before the task counts as done, so close() waits for them as well
+			try {
+				if (!started)
+					result.cancel(false);
+				else if (taskFailure != null)
+					result.completeExceptionally(taskFailure);
+				else
+					result.complete(value);
+			}
+			finally {
+				taskDone();
+			}
+		}
+
+		private synchronized void taskDone() {
+			pendingTasks -= 1;
+			notifyAll();
+		}
+	}
+
+	private static class LimitedExecutor implements Executor {
+		private final Executor executor;
+		private final int maxRunning;
+
+		private final Queue<Runnable> waitingTasks = new ArrayDeque<>();
+		private int runningTasks = 0;
+
+		LimitedExecutor(Executor executor, int maxRunning) {
+			this.executor = executor;
+			this.maxRunning = maxRunning;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			synchronized (this) {
+				if (runningTasks >= maxRunning) {
+					waitingTasks.add(task);
+					return;
+				}
+
+				runningTasks += 1;
+			}
+
+			dispatch(task);
+		}
+
+		private void dispatch(Runnable task) {
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					}
+					finally {
+						runNext();
+					}
+				});
+			}
+			catch (RuntimeException re) {
+				runNext();
+				throw re;
+			}
+		}
+
+		private void runNext() {
+			Runnable task;
+
+			synchronized (this) {
+				task = waitingTasks.poll();
+
+				if (task == null) {
+					runningTasks -= 1;
+					return;
+				}
+			}
+
+			dispatch(task);
+		}
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() if the JDK has it (it's
+	 * looked up at run time, so that the application still runs on Java 11).
+	 */
+	private static ExecutorService newIoExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			var executor = new ThreadPoolExecutor(
+				IO_THREADS, IO_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), threadFactory("transcript-io", Thread.NORM_PRIORITY)
+			);
+			executor.allowCoreThreadTimeOut(true);
+
+			return executor;
+		}
+	}
+
+	private static ThreadFactory threadFactory(String name, int priority) {
+		var threadCount = new AtomicInteger(0);
+
+		return runnable -> {
+			var thread = new Thread(runnable, String.format("%s-%d", name, threadCount.incrementAndGet()));
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,56 @@
+package com.h119.transcript;
+
+import java.io.File;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+/**
+ * Where PDFBox keeps the data of a loaded document (the parsed objects and
+ * the decoded streams): in main memory, or in temporary files so that huge
+ * documents (e.g. archival scans of 1 to 2 GB) load with a small heap.
+ */
+enum LoadMode {
+	AUTO("Automatic"),
+	MEMORY("Main memory"),
+	MIXED("Main memory and temporary files"),
+	TEMP_FILE("Temporary files");
+
+	/** The default size above which the automatic mode uses temporary files. */
+	public static final long DEFAULT_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+	private final String displayName;
+
+	LoadMode(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/**
+	 * In automatic mode the files up to thresholdBytes are loaded into main
+	 * memory, larger files in mixed mode.
+	 *
+	 * @return the mode the file is loaded with (never AUTO)
+	 */
+	public LoadMode resolve(File pdfFile, long thresholdBytes) {
+		if (this != AUTO)
+			return this;
+
+		return pdfFile.length() > thresholdBytes ? MIXED : MEMORY;
+	}
+
+	/**
+	 * The setting of a resolved mode. In mixed mode at most thresholdBytes
+	 * are kept in main memory, the rest is in temporary files.
+	 */
+	public MemoryUsageSetting getMemoryUsageSetting(long thresholdBytes) {
+		switch (this) {
+			case MIXED: return MemoryUsageSetting.setupMixed(thresholdBytes);
+			case TEMP_FILE: return MemoryUsageSetting.setupTempFileOnly();
+			default: return MemoryUsageSetting.setupMainMemoryOnly();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+}
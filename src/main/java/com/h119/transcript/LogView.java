@@ -0,0 +1,62 @@
+package com.h119.transcript;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import javafx.scene.control.TextArea;
+
+/**
+ * Shows the log in a TextArea, keeping only the last MAX_MESSAGES messages
+ * so that appending to it takes the same time no matter how long the
+ * process has been running.
+ *
+ * It must only be used on the JavaFX application thread.
+ */
+class LogView {
+
+	public static final int MAX_MESSAGES = 2000;
+
+	private final TextArea textArea;
+
+	/** The length of the messages shown (with their line breaks), oldest first. */
+	private final ArrayDeque<Integer> messageLengths = new ArrayDeque<>();
+
+	public LogView(TextArea textArea) {
+		this.textArea = textArea;
+	}
+
+	public void clear() {
+		messageLengths.clear();
+		textArea.clear();
+	}
+
+	public void append(String message) {
+		append(List.of(message));
+	}
+
+	/**
+	 * Appends the messages with a single change of the text, then removes
+	 * the oldest messages beyond MAX_MESSAGES.
+	 */
+	public void append(List<String> messages) {
+		if (messages.isEmpty())
+			return;
+
+		var text = new StringBuilder();
+
+		for (var message: messages) {
+			text.append(message).append('\n');
+			messageLengths.addLast(message.length() + 1);
+		}
+
+		textArea.appendText(text.toString());
+
+		int removedLength = 0;
+
+		while (messageLengths.size() > MAX_MESSAGES)
+			removedLength += messageLengths.removeFirst();
+
+		if (removedLength > 0)
+			textArea.deleteText(0, Math.min(removedLength, textArea.getLength()));
+	}
+}
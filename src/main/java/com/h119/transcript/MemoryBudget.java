@@ -0,0 +1,225 @@
+package com.h119.transcript;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Limits the memory held by the pages in flight: the rendered images and
+ * the copies of their pixels on the heap, and the images Tesseract makes of
+ * them in native memory (which the heap limit of the JVM doesn't cover).
+ *
+ * Before rendering a page, the process reserves the memory it's expected to
+ * need, and waits while the reservations of the pages in flight (of every
+ * process) would exceed the budget. Once the page has been rendered, its
+ * reservation is corrected to what it really uses, and the reservation is
+ * released when the page is done.
+ *
+ * The budget is set by the transcript.memory.heapBudgetMb and
+ * transcript.memory.nativeBudgetMb system properties, by default half and a
+ * quarter of the maximum heap size (-Xmx) respectively. So with -Xmx2g in a
+ * 4 GB container the pages take at most 1 GB of the heap and 512 MB of
+ * native memory, which leaves room for the Tesseract engines and the JVM
+ * itself.
+ */
+class MemoryBudget {
+
+	public static final String HEAP_BUDGET_PROPERTY = "transcript.memory.heapBudgetMb";
+	public static final String NATIVE_BUDGET_PROPERTY = "transcript.memory.nativeBudgetMb";
+
+	/** The maximum heap size used for the defaults if the JVM has no limit. */
+	private static final long UNLIMITED_HEAP_BYTES = 4L * 1024 * 1024 * 1024;
+
+	/** A4, in inches. */
+	private static final double PAGE_WIDTH = 8.27;
+	private static final double PAGE_HEIGHT = 11.69;
+
+	private static MemoryBudget defaultBudget;
+
+	/**
+	 * The memory used by a page.
+	 */
+	public static class Footprint {
+		public static final Footprint NONE = new Footprint(0, 0);
+
+		private final long heapBytes;
+		private final long nativeBytes;
+
+		public Footprint(long heapBytes, long nativeBytes) {
+			this.heapBytes = heapBytes;
+			this.nativeBytes = nativeBytes;
+		}
+
+		/**
+		 * The memory used by a rendered page: the image itself, the copy of
+		 * its pixels made for Tesseract (only color images are copied, see
+		 * PageRaster) and the images Tesseract makes of it (a copy with 1, 8
+		 * or 32 bits per pixel, and a black and white one).
+		 */
+		public static Footprint of(PageImage pageImage) {
+			BufferedImage image = pageImage.getImage();
+			long pixels = (long) image.getWidth() * image.getHeight();
+
+			long heapBytes = pageImage.getPixelBytes();
+			long nativeBytes = pixels / 8;
+
+			switch (image.getType()) {
+				case BufferedImage.TYPE_BYTE_BINARY:
+					nativeBytes += pixels / 8;
+					break;
+				case BufferedImage.TYPE_BYTE_GRAY:
+					nativeBytes += pixels;
+					break;
+				default:
+					heapBytes += 3 * pixels;
+					nativeBytes += 4 * pixels;
+			}
+
+			return new Footprint(heapBytes, nativeBytes);
+		}
+
+		/**
+		 * The expected footprint of a page before anything has been
+		 * rendered: an A4 page at the highest resolution of the options.
+		 */
+		public static Footprint estimate(ProcessingOptions options) {
+			long pixels = Math.round(PAGE_WIDTH * options.getMaxDpi()) * Math.round(PAGE_HEIGHT * options.getMaxDpi());
+
+			if (options.getRenderMode() == RenderMode.RGB)
+				return new Footprint(4 * pixels + 3 * pixels, 4 * pixels + pixels / 8);
+
+			return new Footprint(pixels, pixels + pixels / 8);
+		}
+
+		public long getHeapBytes() {
+			return heapBytes;
+		}
+
+		public long getNativeBytes() {
+			return nativeBytes;
+		}
+
+		public Footprint max(Footprint other) {
+			return new Footprint(Math.max(heapBytes, other.heapBytes), Math.max(nativeBytes, other.nativeBytes));
+		}
+	}
+
+	/**
+	 * The memory reserved for a page.
+	 */
+	public class Reservation implements AutoCloseable {
+		private Footprint footprint;
+
+		private Reservation(Footprint footprint) {
+			this.footprint = footprint;
+		}
+
+		/**
+		 * Changes the reservation to what the page really uses (without
+		 * waiting, even if that exceeds the budget: the memory is in use
+		 * already).
+		 */
+		public void resize(Footprint newFootprint) {
+			synchronized (MemoryBudget.this) {
+				if (footprint == null)
+					return;
+
+				release(footprint);
+				footprint = newFootprint;
+				heapBytes += footprint.heapBytes;
+				nativeBytes += footprint.nativeBytes;
+			}
+		}
+
+		/**
+		 * Releases the memory (more than once doesn't matter).
+		 */
+		@Override
+		public void close() {
+			synchronized (MemoryBudget.this) {
+				if (footprint == null)
+					return;
+
+				release(footprint);
+				footprint = null;
+			}
+		}
+	}
+
+	private final long maxHeapBytes;
+	private final long maxNativeBytes;
+
+	private long heapBytes = 0;
+	private long nativeBytes = 0;
+
+	public MemoryBudget(long maxHeapBytes, long maxNativeBytes) {
+		this.maxHeapBytes = maxHeapBytes;
+		this.maxNativeBytes = maxNativeBytes;
+	}
+
+	/**
+	 * The budget shared by every process of the application (see the
+	 * system properties above).
+	 */
+	public static synchronized MemoryBudget getDefault() {
+		if (defaultBudget == null) {
+			long maxMemory = Runtime.getRuntime().maxMemory();
+
+			if (maxMemory == Long.MAX_VALUE)
+				maxMemory = UNLIMITED_HEAP_BYTES;
+
+			defaultBudget = new MemoryBudget(
+				megabytes(HEAP_BUDGET_PROPERTY, maxMemory / 2),
+				megabytes(NATIVE_BUDGET_PROPERTY, maxMemory / 4)
+			);
+		}
+
+		return defaultBudget;
+	}
+
+	public long getMaxHeapBytes() {
+		return maxHeapBytes;
+	}
+
+	public long getMaxNativeBytes() {
+		return maxNativeBytes;
+	}
+
+	/**
+	 * Reserves the memory of a page, waiting until it fits into the budget.
+	 * A page that is larger than the whole budget only waits until nothing
+	 * else is reserved, so that it can still be processed (alone).
+	 */
+	public synchronized Reservation reserve(Footprint footprint) throws InterruptedException {
+		while (
+			(heapBytes > 0 || nativeBytes > 0) &&
+			(heapBytes + footprint.heapBytes > maxHeapBytes || nativeBytes + footprint.nativeBytes > maxNativeBytes)
+		) {
+			wait();
+		}
+
+		heapBytes += footprint.heapBytes;
+		nativeBytes += footprint.nativeBytes;
+
+		return new Reservation(footprint);
+	}
+
+	private synchronized void release(Footprint footprint) {
+		heapBytes -= footprint.heapBytes;
+		nativeBytes -= footprint.nativeBytes;
+		notifyAll();
+	}
+
+	private static long megabytes(String property, long defaultBytes) {
+		String value = System.getProperty(property);
+
+		if (value != null) {
+			try {
+				return Math.max(1, Long.parseLong(value.trim())) * 1024 * 1024;
+			}
+			catch (NumberFormatException nfe) {
+				System.err.format("Invalid memory budget (%s): %s\n", property, value);
+			}
+		}
+
+		return defaultBytes;
+	}
+}
@@ -0,0 +1,306 @@
+package com.h119.transcript;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The recognized text of pages stored on disk by the hash of the page image,
+ * the language and the engine settings, so that recognizing the same page
+ * again (re-running a document or a document sharing pages with an earlier
+ * one) doesn't need Tesseract.
+ *
+ * The texts are kept in files named by the hash. Reading a text updates the
+ * modification time of its file, and when the cache grows beyond its size
+ * the least recently used texts are deleted.
+ */
+class OcrCache {
+
+	public static final String DIRECTORY_PROPERTY = "transcript.ocr.cacheDirectory";
+	public static final String SIZE_PROPERTY = "transcript.ocr.cacheSizeMb";
+
+	private static final long DEFAULT_SIZE_MB = 256;
+
+	/**
+	 * After evicting, the cache is this fraction of its maximum size, so
+	 * that evicting isn't needed again right after the next page.
+	 */
+	private static final double EVICTED_SIZE_RATIO = 0.9;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static OcrCache defaultCache;
+	private static boolean defaultCacheOpened = false;
+
+	private final Path directory;
+	private final long maxBytes;
+	private final AtomicLong totalBytes;
+
+	public OcrCache(Path directory, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+
+		Files.createDirectories(directory);
+
+		long size = 0;
+
+		for (var file: listEntries())
+			size += file.size;
+
+		this.totalBytes = new AtomicLong(size);
+	}
+
+	/**
+	 * The cache shared by the whole application: in the directory set by the
+	 * transcript.ocr.cacheDirectory system property (.transcript/ocr-cache in
+	 * the home directory by default), bounded by the transcript.ocr.cacheSizeMb
+	 * system property (256 MB by default).
+	 *
+	 * @return the cache or null if it could not be opened
+	 */
+	public static synchronized OcrCache getDefault() {
+		if (!defaultCacheOpened) {
+			defaultCacheOpened = true;
+
+			Path directory = Paths.get(
+				System.getProperty(
+					DIRECTORY_PROPERTY,
+					Paths.get(System.getProperty("user.home"), ".transcript", "ocr-cache").toString()
+				)
+			);
+
+			long sizeMb = DEFAULT_SIZE_MB;
+			String value = System.getProperty(SIZE_PROPERTY);
+
+			if (value != null) {
+				try {
+					sizeMb = Math.max(1, Long.parseLong(value.trim()));
+				}
+				catch (NumberFormatException nfe) {
+					System.err.format("Invalid OCR cache size: %s\n", value);
+				}
+			}
+
+			try {
+				defaultCache = new OcrCache(directory, sizeMb * 1024 * 1024);
+			}
+			catch (IOException | UncheckedIOException e) {
+				System.err.format("Could not open the OCR cache: %s\n", e);
+			}
+		}
+
+		return defaultCache;
+	}
+
+	/**
+	 * The key of a rendered page: the hash of its pixels, its layout and
+	 * resolution, and the engine settings.
+	 */
+	public String key(String engineSettings, PageRaster raster) {
+		MessageDigest digest = newDigest(engineSettings);
+
+		digest.update(
+			String.format(
+				"%d|%d|%d|%d|%d|",
+				raster.getWidth(), raster.getHeight(), raster.getBytesPerPixel(),
+				raster.getBytesPerLine(), raster.getDpi()
+			).getBytes(StandardCharsets.UTF_8)
+		);
+		digest.update(raster.getData());
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * The key of a page image file: the hash of its contents and the engine
+	 * settings.
+	 */
+	public String key(String engineSettings, Path imageFile) throws IOException {
+		MessageDigest digest = newDigest(engineSettings);
+
+		try (InputStream input = Files.newInputStream(imageFile)) {
+			var buffer = new byte[64 * 1024];
+
+			for (int read = input.read(buffer); read >= 0; read = input.read(buffer))
+				digest.update(buffer, 0, read);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return the text stored by the key or null if there's none
+	 */
+	public String get(String key) {
+		Path file = entryFile(key);
+
+		try {
+			String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+			// Marks the text as recently used
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+			return text;
+		}
+		catch (NoSuchFileException nsfe) {
+			return null;
+		}
+		catch (IOException ioe) {
+			// A broken entry is just recognized again
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the text by the key. Errors are ignored: the cache only makes
+	 * the OCR faster, it isn't needed for it to work.
+	 */
+	public void put(String key, String text) {
+		Path file = entryFile(key);
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			// Written under a temporary name so that a text is never read half written
+			Path temporaryFile = Files.createTempFile(file.getParent(), key, ".tmp");
+			long previousSize;
+
+			try {
+				Files.write(temporaryFile, bytes);
+
+				previousSize = Files.exists(file) ? Files.size(file) : 0;
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (IOException ioe) {
+				// Nothing else would ever delete it (it isn't an entry of the cache)
+				try {
+					Files.deleteIfExists(temporaryFile);
+				}
+				catch (IOException deleteError) {
+					ioe.addSuppressed(deleteError);
+				}
+
+				throw ioe;
+			}
+
+			if (totalBytes.addAndGet(bytes.length - previousSize) > maxBytes)
+				evict();
+		}
+		catch (IOException ioe) {
+			System.err.format("Could not store a text in the OCR cache: %s\n", ioe);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used texts until the cache is below its
+	 * size again.
+	 */
+	private synchronized void evict() throws IOException {
+		if (totalBytes.get() <= maxBytes)
+			return;
+
+		List<Entry> entries = listEntries();
+		entries.sort(Comparator.comparingLong(entry -> entry.lastModified));
+
+		long size = 0;
+
+		for (var entry: entries)
+			size += entry.size;
+
+		long targetSize = (long) (maxBytes * EVICTED_SIZE_RATIO);
+
+		for (var entry: entries) {
+			if (size <= targetSize)
+				break;
+
+			if (Files.deleteIfExists(entry.file))
+				size -= entry.size;
+		}
+
+		totalBytes.set(size);
+	}
+
+	private static class Entry {
+		final Path file;
+		final long size;
+		final long lastModified;
+
+		Entry(Path file, long size, long lastModified) {
+			this.file = file;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private List<Entry> listEntries() throws IOException {
+		List<Path> files;
+
+		try (Stream<Path> paths = Files.walk(directory, 2)) {
+			files = paths
+				.filter(path -> path.getFileName().toString().endsWith(".txt"))
+				.collect(Collectors.toList());
+		}
+
+		var entries = new ArrayList<Entry>(files.size());
+
+		for (var file: files) {
+			try {
+				entries.add(new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+			}
+			catch (NoSuchFileException nsfe) {
+				// Evicted by another process in the meantime
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * The texts are spread over 256 directories by the first two digits of
+	 * their key, so that no directory gets too big.
+	 */
+	private Path entryFile(String key) {
+		return directory.resolve(key.substring(0, 2)).resolve(key + ".txt");
+	}
+
+	private static MessageDigest newDigest(String engineSettings) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(engineSettings.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+
+			return digest;
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			// Every Java platform has to support SHA-256
+			throw new IllegalStateException(nsae);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		var hex = new StringBuilder(bytes.length * 2);
+
+		for (byte b: bytes) {
+			hex.append(HEX_DIGITS[(b >> 4) & 0xf]);
+			hex.append(HEX_DIGITS[b & 0xf]);
+		}
+
+		return hex.toString();
+	}
+}
@@ -1,158 +1,181 @@
 package com.h119.transcript;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javafx.application.Platform;
-import javafx.concurrent.Task;
 import javafx.scene.control.Button;
-import javafx.scene.control.TextArea;
-
-import org.bytedeco.javacpp.BytePointer;
-import org.bytedeco.leptonica.PIX;
-import org.bytedeco.tesseract.TessBaseAPI;
-import static org.bytedeco.leptonica.global.lept.pixDestroy;
-import static org.bytedeco.leptonica.global.lept.pixRead;
-
-import org.docx4j.dml.wordprocessingDrawing.Inline;
-import org.docx4j.jaxb.Context;
-import org.docx4j.model.table.TblFactory;
-import org.docx4j.openpackaging.exceptions.Docx4JException;
-import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
-import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPartAbstractImage;
-import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
 
 import com.h119.transcript.util.LanguageCodes;
 import static com.h119.transcript.util.LanguageCodes.Language;
 
-class OcrProcess extends Task<Void> {
+class OcrProcess extends ProcessTask {
 
 	private final File pdfFile;
 	private final Language documentLanguage;
-	private final ArrayList<String> imageFiles;
-	private final TextArea textArea;
+	private final DocumentPages pages;
 	private final Button openFileButton;
 	private final Button cancelButton;
-
+	private final ProcessingOptions options;
+	private final ProcessMetrics metrics;
+
+	/**
+	 * The pages that have an image file but no text yet are recognized by
+	 * at most options.getOcrWorkers() threads of the JobScheduler in
+	 * parallel, each with its own Tesseract engine. The pages recognized by
+	 * a previous (cancelled) run are taken from its PageJournal. The timing
+	 * of the pages is added to metrics (shared with the ImageCreationProcess
+	 * of the document).
+	 */
 	public OcrProcess(
-		File pdfFile, Language documentLanguage, ArrayList<String> imageFiles,
-		TextArea textArea, Button openFileButton, Button cancelButton
+		File pdfFile, Language documentLanguage, DocumentPages pages,
+		UiEventBus events, Button openFileButton, Button cancelButton,
+		ProcessingOptions options, ProcessMetrics metrics
 	) {
+		super(events);
 		this.pdfFile = pdfFile;
 		this.documentLanguage = documentLanguage;
-		this.imageFiles = imageFiles;
-		this.textArea = textArea;
+		this.pages = pages;
 		this.openFileButton = openFileButton;
 		this.cancelButton = cancelButton;
+		this.options = options;
+		this.metrics = metrics;
 	}
 
 	@Override
 	public Void call() throws InterruptedException {
 		try {
 			String languageCode = documentLanguage.getAlpha3();
-			var documentLines = new ArrayList<String>();
-			String pdfFilePath = pdfFile.getCanonicalPath();
-			String fileNoExtension = pdfFilePath.substring(0, pdfFilePath.lastIndexOf("."));
-
-			int documentPages = imageFiles.size();
+			String fileNoExtension = options.getOutputBase(pdfFile);
+			String fingerprint = PageJournal.fingerprint(pdfFile, languageCode, options);
 
-			updateProgress(300, 1000);
+			try (var journal = PageJournal.open(PageJournal.journalFile(fileNoExtension), fingerprint)) {
+				int restoredPages = journal.restore(pages, options.getPageSelection());
 
-			BytePointer outText;
+				if (restoredPages > 0)
+					log(String.format("Continuing the previous run: %d pages are already done", restoredPages));
 
-			TessBaseAPI api = new TessBaseAPI();
-			int errorCode = api.Init("tessdata", languageCode);
-			if (errorCode != 0) {
-				throw new RuntimeException(
-					String.format("Could not initialize tesseract -- error code: %d", errorCode)
-				);
-			}
+				var pendingPages = new ArrayList<Integer>();
 
-			Platform.runLater(() -> {textArea.appendText("Successfully initialized tesseract\n");});
-			Platform.runLater(() -> {textArea.appendText("Starting OCR...\n");});
+				for (int page = 0; page < pages.getPageCount(); ++page) {
+					if (!pages.hasText(page) && pages.getImageFile(page) != null)
+						pendingPages.add(page);
+				}
 
-			int page = 0;
-			for (var imageFile: imageFiles) {
-				Platform.runLater(() -> {textArea.appendText(String.format("Performing OCR on %s\n", imageFile));});
+				progress(300, 1000);
 
-				PIX image = pixRead(imageFile);
-				api.SetImage(image);
+				if (pendingPages.isEmpty())
+					log("Every page has a text already, no OCR is needed");
+				else
+					recognizeInParallel(languageCode, pendingPages, journal);
 
-				outText = api.GetUTF8Text();
-				documentLines.addAll(
-					Arrays.asList(
-						new String(outText.getStringBytes(), StandardCharsets.UTF_8)
-							.split("\n")
-					)
-				);
+				File exportFile = new File(fileNoExtension + ".docx");
 
-				outText.deallocate();
-				pixDestroy(image);
+				try (var timer = metrics.time(-1, ProcessMetrics.Stage.SAVE_DOCUMENT)) {
+					if (isCancelled() || !WordExport.save(pages.getTexts(), exportFile, this)) {
+						log("Cancelled");
+						progress(0, 1000);
+						return null;
+					}
 
-				if (isCancelled()) {
-					Platform.runLater(() -> {textArea.appendText("Cancelled\n");});
-					updateProgress(0, 1000);
-					api.End();
-					return null;
+					timer.setBytes(exportFile.length());
 				}
 
-				updateProgress(300 + (300 * (page + 1) / documentPages), 1000);
-				page += 1;
+				journal.delete();
 			}
 
-			api.End();
-
-			Platform.runLater(() -> {textArea.appendText("Saving the text as a Word document...\n");});
+			metrics.report(this, fileNoExtension, options.isSaveMetrics());
 
-			WordprocessingMLPackage wordPackage = WordprocessingMLPackage.createPackage();
-			MainDocumentPart mainDocumentPart = wordPackage.getMainDocumentPart();
-
-			int currentLine = 0;
-			int lineNumber = documentLines.size();
+			log(String.format("The Word file has been created: %s.docx", fileNoExtension));
+		}
+		catch (Throwable e) {
+			logFailure(e);
+		}
 
-			for (var line: documentLines) {
-				mainDocumentPart.addParagraphOfText(line);
+		return null;
+	}
 
-				if (isCancelled()) {
-					Platform.runLater(() -> {textArea.appendText("Cancelled\n");});
-					updateProgress(0, 1000);
-					return null;
+	private void recognizeInParallel(
+		String languageCode, List<Integer> pendingPages, PageJournal journal
+	) throws Exception {
+		int workers = Math.max(1, Math.min(options.getOcrWorkers(), pendingPages.size()));
+
+		try (var pool = new TesseractPool(languageCode, workers)) {
+			pool.setCache(options.getOcrCache());
+			log(
+				String.format(
+					"Successfully initialized %d tesseract engine(s) (%d of them were ready already)",
+					workers, pool.getWarmEngines()
+				)
+			);
+			log("Starting OCR...");
+
+			var scheduler = JobScheduler.getDefault();
+			Executor ocr = pool.getExecutor();
+			var pagesDone = new AtomicInteger(0);
+
+			// The scope waits for the stages when it's closed, the engines are ended only after that
+			try (var scope = scheduler.openScope()) {
+				var results = new ArrayList<CompletableFuture<Void>>();
+
+				for (int page: pendingPages) {
+					CompletableFuture<Void> result = scope
+						.submit(ocr, () -> recognizePage(pool, page))
+						.thenCompose(text -> {
+							if (text == null)
+								return CompletableFuture.completedFuture(null);
+
+							return scope.submit(scheduler.io(), () -> {
+								try (var timer = metrics.time(page, ProcessMetrics.Stage.SAVE_TEXT)) {
+									pages.setText(page, text);
+									journal.record(page, pages.getRotation(page), text);
+									timer.setBytes(text.getBytes(StandardCharsets.UTF_8).length);
+								}
+
+								progress(300 + (300 * pagesDone.incrementAndGet() / pendingPages.size()), 1000);
+								return null;
+							});
+						});
+
+					results.add(result);
 				}
 
-				updateProgress(600 + (360 * (currentLine + 1) / lineNumber), 1000);
-				currentLine += 1;
+				scope.await(results, this);
 			}
+		}
+	}
 
-			File exportFile = new File(fileNoExtension + ".docx");
-			wordPackage.save(exportFile);
+	/**
+	 * Performs OCR on a page on one of the CPU threads of the JobScheduler.
+	 * The recognized text is stored with the page (by the caller) so that
+	 * the document can be assembled in page order afterwards.
+	 *
+	 * @return the text of the page or null if the process has been cancelled
+	 */
+	private String recognizePage(TesseractPool pool, int page) throws IOException, InterruptedException {
+		if (isCancelled())
+			return null;
 
-			updateProgress(1000, 1000);
+		String imageFile = pages.getImageFile(page);
 
-			Platform.runLater(() -> {
-				textArea.appendText(
-					String.format("The Word file has been created: %s.docx\n", fileNoExtension)
-				);
-			});
-		}
-		catch (Throwable e) {
-			Platform.runLater(() -> {textArea.appendText(String.format("Error: %s\n", e));});
-			e.printStackTrace();
-		}
+		log(String.format("Performing OCR on %s", imageFile));
 
-		return null;
+		return pool.recognize(imageFile, pages.getRotation(page), metrics, page);
 	}
 
 	@Override
 	protected void done() {
 		super.done();
+		log("Done");
 		Platform.runLater(() -> {
-			textArea.appendText("Done\n");
 			openFileButton.setDisable(false);
 			cancelButton.setDisable(true);
 		});
 	}
 }
-
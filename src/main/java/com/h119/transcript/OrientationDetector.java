@@ -0,0 +1,160 @@
+package com.h119.transcript;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.tesseract.TessBaseAPI;
+import static org.bytedeco.tesseract.global.tesseract.PSM_OSD_ONLY;
+
+/**
+ * Detects the orientation (and the script) of rendered pages with
+ * Tesseract's orientation and script detection, so that sideways and
+ * upside-down pages can be turned upright before OCR.
+ *
+ * Uses its own engines initialized with the osd training data, which can
+ * be used from several threads like a TesseractPool.
+ */
+class OrientationDetector implements AutoCloseable {
+
+	public static final String OSD_LANGUAGE = "osd";
+
+	/**
+	 * Below this confidence the detected orientation is not trusted: the
+	 * page is not turned, but flagged for review. (Pages with too little
+	 * text for the detection, like blank pages, are not flagged.)
+	 */
+	public static final float MIN_CONFIDENCE = 2.0f;
+
+	/**
+	 * The orientation of a page.
+	 */
+	public static class PageOrientation {
+		/** The orientation of a page the detection didn't work on. */
+		static final PageOrientation UNKNOWN = new PageOrientation(0, 0, null);
+
+		private final int rotation;
+		private final float confidence;
+		private final String script;
+
+		PageOrientation(int rotation, float confidence, String script) {
+			this.rotation = rotation;
+			this.confidence = confidence;
+			this.script = script;
+		}
+
+		/**
+		 * The clockwise rotation in degrees (0, 90, 180 or 270) that turns
+		 * the page upright.
+		 */
+		public int getRotation() {
+			return rotation;
+		}
+
+		public float getConfidence() {
+			return confidence;
+		}
+
+		/**
+		 * The name of the detected script (e.g. Latin) or null.
+		 */
+		public String getScript() {
+			return script;
+		}
+
+		/**
+		 * Whether the page is to be rotated by getRotation(): the
+		 * orientation has been detected with enough confidence.
+		 */
+		public boolean isCertain() {
+			return this != UNKNOWN && confidence >= MIN_CONFIDENCE;
+		}
+
+		/**
+		 * Whether the orientation has been detected, but with too little
+		 * confidence to rotate the page.
+		 */
+		public boolean needsReview() {
+			return this != UNKNOWN && confidence < MIN_CONFIDENCE;
+		}
+	}
+
+	private final TesseractPool pool;
+
+	public OrientationDetector(int size) {
+		this.pool = new TesseractPool(OSD_LANGUAGE, size);
+	}
+
+	/**
+	 * Whether the osd training data is there.
+	 */
+	public static boolean isAvailable() {
+		return Files.isRegularFile(Paths.get("tessdata", OSD_LANGUAGE + ".traineddata"));
+	}
+
+	/**
+	 * @return the orientation of the page or PageOrientation.UNKNOWN if it
+	 *         could not be detected at all (e.g. the page has no text)
+	 */
+	public PageOrientation detect(PageRaster raster) throws InterruptedException {
+		TessBaseAPI api = pool.acquire();
+
+		try (
+			var orientation = new IntPointer(1);
+			var orientationConfidence = new FloatPointer(1);
+			var scriptName = new PointerPointer<BytePointer>(1);
+			var scriptConfidence = new FloatPointer(1)
+		) {
+			api.SetPageSegMode(PSM_OSD_ONLY);
+			api.SetImage(
+				raster.getData(), raster.getWidth(), raster.getHeight(),
+				raster.getBytesPerPixel(), raster.getBytesPerLine()
+			);
+			api.SetSourceResolution(raster.getDpi());
+
+			if (!api.DetectOrientationScript(orientation, orientationConfidence, scriptName, scriptConfidence))
+				return PageOrientation.UNKNOWN;
+
+			BytePointer script = scriptName.get(BytePointer.class, 0);
+
+			// Tesseract tells how the page is rotated clockwise, turning it back is the opposite
+			return new PageOrientation(
+				(360 - orientation.get()) % 360,
+				orientationConfidence.get(),
+				script != null && !script.isNull() ? script.getString() : null
+			);
+		}
+		finally {
+			pool.release(api);
+		}
+	}
+
+	/**
+	 * The message about a page whose orientation has been detected, or null
+	 * if there's nothing to tell (the page is upright).
+	 */
+	public static String describe(int page, PageOrientation orientation) {
+		if (orientation.needsReview()) {
+			return String.format(
+				"The orientation of page %d is uncertain (confidence: %.1f), it is flagged for review",
+				page + 1, orientation.getConfidence()
+			);
+		}
+
+		if (!orientation.isCertain() || orientation.getRotation() == 0)
+			return null;
+
+		return String.format(
+			"Page %d is turned upright by rotating it %d degrees clockwise (script: %s, confidence: %.1f)",
+			page + 1, orientation.getRotation(), orientation.getScript(), orientation.getConfidence()
+		);
+	}
+
+	@Override
+	public void close() {
+		pool.close();
+	}
+}
@@ -0,0 +1,71 @@
+package com.h119.transcript;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+
+/**
+ * A rendered page and the resolution it has been rendered with.
+ */
+class PageImage {
+
+	private final BufferedImage image;
+	private final int dpi;
+
+	public PageImage(BufferedImage image, int dpi) {
+		this.image = image;
+		this.dpi = dpi;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public int getDpi() {
+		return dpi;
+	}
+
+	/**
+	 * The memory taken by the pixels of the image.
+	 */
+	public long getPixelBytes() {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	/**
+	 * The page rotated clockwise by a multiple of 90 degrees. Every pixel is
+	 * moved to its new place without interpolation, so the page keeps its
+	 * sharpness and color depth.
+	 */
+	public PageImage rotated(int degrees) {
+		int rotation = Math.floorMod(degrees, 360);
+
+		if (rotation == 0)
+			return this;
+
+		if (rotation % 90 != 0)
+			throw new IllegalArgumentException(String.format("Not a multiple of 90 degrees: %d", degrees));
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean swapped = rotation != 180;
+		int newWidth = swapped ? height : width;
+		int newHeight = swapped ? width : height;
+
+		// Rotates around the origin, then moves the page back into the image
+		var transform = new AffineTransform();
+		transform.translate(
+			rotation == 90 || rotation == 180 ? newWidth : 0,
+			rotation == 180 || rotation == 270 ? newHeight : 0
+		);
+		transform.quadrantRotate(rotation / 90);
+
+		var rotatedImage = new BufferedImage(newWidth, newHeight, image.getType());
+		new AffineTransformOp(transform, AffineTransformOp.TYPE_NEAREST_NEIGHBOR).filter(image, rotatedImage);
+
+		return new PageImage(rotatedImage, dpi);
+	}
+}
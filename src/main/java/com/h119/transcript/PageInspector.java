@@ -0,0 +1,193 @@
+package com.h119.transcript;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * Collects information about the content of a page without rendering it.
+ */
+class PageInspector {
+
+	private PageInspector() {}
+
+	/**
+	 * The image XObjects used by the page, including the ones in its form
+	 * XObjects. Inline images are not included.
+	 */
+	public static List<PDImageXObject> findImages(PDPage page) throws IOException {
+		var images = new ArrayList<PDImageXObject>();
+		Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		collectImages(page.getResources(), images, visited);
+
+		return images;
+	}
+
+	private static void collectImages(
+		PDResources resources, List<PDImageXObject> images, Set<COSBase> visited
+	) throws IOException {
+		if (resources == null)
+			return;
+
+		for (COSName name: resources.getXObjectNames()) {
+			PDXObject xObject = resources.getXObject(name);
+
+			// The same form can be used several times (and it may even contain itself)
+			if (xObject == null || !visited.add(xObject.getCOSObject()))
+				continue;
+
+			if (xObject instanceof PDImageXObject)
+				images.add((PDImageXObject) xObject);
+			else if (xObject instanceof PDFormXObject)
+				collectImages(((PDFormXObject) xObject).getResources(), images, visited);
+		}
+	}
+
+	/**
+	 * The images drawn on the page with the size they are drawn with,
+	 * including inline images and the images of form XObjects. An image
+	 * drawn several times is listed every time.
+	 */
+	public static List<DrawnImage> findDrawnImages(PDPage page) throws IOException {
+		var finder = new DrawnImageFinder(page);
+		finder.processPage(page);
+
+		return finder.images;
+	}
+
+	/**
+	 * Whether the image has only black and white pixels (e.g. a fax or a
+	 * bitonal scan, which are usually JBIG2 or CCITT encoded).
+	 */
+	public static boolean isBitonal(PDImageXObject image) {
+		return image.isStencil() || image.getBitsPerComponent() == 1;
+	}
+
+	/**
+	 * An image as it is drawn on a page.
+	 */
+	static class DrawnImage {
+		/** The size of the image in pixels. */
+		final int width;
+		final int height;
+
+		/**
+		 * The area the image is drawn on in square points (the image can be
+		 * scaled, rotated and skewed, and it can reach beyond the page).
+		 */
+		final double area;
+
+		/**
+		 * The area of the bounding box of the image clipped to the crop box
+		 * of the page, in square points.
+		 */
+		final double visibleArea;
+
+		private DrawnImage(int width, int height, double area, double visibleArea) {
+			this.width = width;
+			this.height = height;
+			this.area = area;
+			this.visibleArea = visibleArea;
+		}
+	}
+
+	private static class DrawnImageFinder extends PDFGraphicsStreamEngine {
+		private final PDRectangle pageBox;
+		private final List<DrawnImage> images = new ArrayList<>();
+
+		private DrawnImageFinder(PDPage page) {
+			super(page);
+			pageBox = page.getCropBox();
+		}
+
+		@Override
+		public void drawImage(PDImage image) {
+			// The image is drawn into the unit square of its transformation
+			Matrix transformation = getGraphicsState().getCurrentTransformationMatrix();
+			Point2D[] corners = new Point2D[4];
+
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+			for (int corner = 0; corner < 4; ++corner) {
+				Point2D point = transformation.transformPoint(corner % 2, corner / 2);
+				corners[corner] = point;
+
+				minX = Math.min(minX, point.getX());
+				minY = Math.min(minY, point.getY());
+				maxX = Math.max(maxX, point.getX());
+				maxY = Math.max(maxY, point.getY());
+			}
+
+			// The unit square is mapped to the parallelogram of the sides (0, 0)-(1, 0) and (0, 0)-(0, 1)
+			double sideX = corners[1].getX() - corners[0].getX();
+			double sideY = corners[1].getY() - corners[0].getY();
+			double otherSideX = corners[2].getX() - corners[0].getX();
+			double otherSideY = corners[2].getY() - corners[0].getY();
+			double area = Math.abs(sideX * otherSideY - sideY * otherSideX);
+
+			double width = Math.min(maxX, pageBox.getUpperRightX()) - Math.max(minX, pageBox.getLowerLeftX());
+			double height = Math.min(maxY, pageBox.getUpperRightY()) - Math.max(minY, pageBox.getLowerLeftY());
+			double visibleArea = width > 0 && height > 0 ? width * height : 0;
+
+			images.add(new DrawnImage(image.getWidth(), image.getHeight(), area, visibleArea));
+		}
+
+		// Only the images are of interest, the paths are ignored
+
+		@Override
+		public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {}
+
+		@Override
+		public void clip(int windingRule) {}
+
+		@Override
+		public void moveTo(float x, float y) {}
+
+		@Override
+		public void lineTo(float x, float y) {}
+
+		@Override
+		public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {}
+
+		@Override
+		public Point2D getCurrentPoint() {
+			return new Point2D.Float();
+		}
+
+		@Override
+		public void closePath() {}
+
+		@Override
+		public void endPath() {}
+
+		@Override
+		public void strokePath() {}
+
+		@Override
+		public void fillPath(int windingRule) {}
+
+		@Override
+		public void fillAndStrokePath(int windingRule) {}
+
+		@Override
+		public void shadingFill(COSName shadingName) {}
+	}
+}
@@ -0,0 +1,239 @@
+package com.h119.transcript;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the text of every page of a document as soon as it's ready, so
+ * that a cancelled or crashed process can be continued where it stopped
+ * instead of starting over.
+ *
+ * The journal is kept next to the Word document. It starts with the
+ * fingerprint of the document and the settings; if they don't match when
+ * the journal is opened, it is started over. Every page is appended as a
+ * record (page number, rotation, length, UTF-8 text) and written to the
+ * disk right away. A record that has only been partially written (the
+ * process was killed while writing it) is dropped.
+ */
+class PageJournal implements AutoCloseable {
+
+	private static final int MAGIC = 0x54524a32; // "TRJ2"
+	private static final int MAX_TEXT_LENGTH = 64 * 1024 * 1024;
+	private static final int RECORD_HEADER_LENGTH = 12;
+
+	/**
+	 * The text of a page and the rotation its image has been recognized with.
+	 */
+	private static class Record {
+		final int rotation;
+		final String text;
+
+		Record(int rotation, String text) {
+			this.rotation = rotation;
+			this.text = text;
+		}
+	}
+
+	private final File journalFile;
+	private final FileChannel channel;
+	private final Map<Integer, Record> recordedPages;
+
+	private PageJournal(File journalFile, FileChannel channel, Map<Integer, Record> recordedPages) {
+		this.journalFile = journalFile;
+		this.channel = channel;
+		this.recordedPages = recordedPages;
+	}
+
+	/**
+	 * Opens the journal of a document, reading the pages recorded before if
+	 * it has been written with the same fingerprint.
+	 */
+	public static PageJournal open(File journalFile, String fingerprint) throws IOException {
+		var recordedPages = new HashMap<Integer, Record>();
+		long validLength = journalFile.isFile() ? read(journalFile, fingerprint, recordedPages) : -1;
+
+		FileChannel channel = FileChannel.open(
+			journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE
+		);
+
+		try {
+			if (validLength < 0) {
+				// A new journal (or one of another document or other settings)
+				channel.truncate(0);
+
+				byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+				var header = ByteBuffer.allocate(8 + fingerprintBytes.length);
+				header.putInt(MAGIC).putInt(fingerprintBytes.length).put(fingerprintBytes).flip();
+
+				writeFully(channel, header);
+				channel.force(false);
+			}
+			else {
+				// Drops the partially written record at the end, if any
+				channel.truncate(validLength);
+				channel.position(validLength);
+			}
+		}
+		catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+
+		return new PageJournal(journalFile, channel, recordedPages);
+	}
+
+	/**
+	 * Reads the records of the journal into recordedPages.
+	 *
+	 * @return the length of the journal up to the last complete record, or
+	 *         -1 if it is not a journal with the fingerprint
+	 */
+	private static long read(
+		File journalFile, String fingerprint, Map<Integer, Record> recordedPages
+	) throws IOException {
+		try (
+			InputStream fileInput = Files.newInputStream(journalFile.toPath());
+			var input = new DataInputStream(new BufferedInputStream(fileInput))
+		) {
+			long length;
+
+			try {
+				if (input.readInt() != MAGIC)
+					return -1;
+
+				int fingerprintLength = input.readInt();
+
+				if (fingerprintLength < 0 || fingerprintLength > MAX_TEXT_LENGTH)
+					return -1;
+
+				var fingerprintBytes = new byte[fingerprintLength];
+				input.readFully(fingerprintBytes);
+
+				if (!fingerprint.equals(new String(fingerprintBytes, StandardCharsets.UTF_8)))
+					return -1;
+
+				length = 8 + fingerprintLength;
+			}
+			catch (EOFException eofe) {
+				return -1;
+			}
+
+			try {
+				while (true) {
+					int page = input.readInt();
+					int rotation = input.readInt();
+					int textLength = input.readInt();
+
+					if (page < 0 || textLength < 0 || textLength > MAX_TEXT_LENGTH)
+						break;
+
+					var textBytes = new byte[textLength];
+					input.readFully(textBytes);
+
+					recordedPages.put(page, new Record(rotation, new String(textBytes, StandardCharsets.UTF_8)));
+					length += RECORD_HEADER_LENGTH + textLength;
+				}
+			}
+			catch (EOFException eofe) {
+				// The end of the journal (or of its last complete record)
+			}
+
+			return length;
+		}
+	}
+
+	/**
+	 * The fingerprint of a document and the settings that affect its text:
+	 * the journal of a modified PDF file or one processed in another
+	 * language is not continued.
+	 */
+	public static String fingerprint(File pdfFile, String languageCode, ProcessingOptions options) {
+		return String.format(
+			"%s|%d|%d|%s|%s|%d|%d|%b",
+			pdfFile.getName(), pdfFile.length(), pdfFile.lastModified(), languageCode,
+			options.getRenderMode().name(), options.getMinDpi(), options.getMaxDpi(),
+			options.isUseTextLayer()
+		);
+	}
+
+	/**
+	 * The journal file of the document whose output files are named
+	 * fileNoExtension.*
+	 */
+	public static File journalFile(String fileNoExtension) {
+		return new File(fileNoExtension + ".journal");
+	}
+
+	/**
+	 * Puts the texts of the recorded pages into pages. The pages that have
+	 * been rotated since they were recorded are left out: they have to be
+	 * recognized again. So are the pages that are not selected (a previous
+	 * run may have processed other pages of the document). The journal
+	 * doesn't keep the texts in memory afterwards, it can restore them once.
+	 *
+	 * @return the number of pages restored
+	 */
+	public int restore(DocumentPages pages, PageSelection selection) {
+		int restored = 0;
+
+		for (var entry: recordedPages.entrySet()) {
+			int page = entry.getKey();
+			Record record = entry.getValue();
+
+			if (
+				page < pages.getPageCount() && selection.contains(page) &&
+				record.rotation == pages.getRotation(page)
+			) {
+				pages.setText(page, record.text);
+				restored += 1;
+			}
+		}
+
+		// The texts are in pages now (and in the journal file)
+		recordedPages.clear();
+
+		return restored;
+	}
+
+	/**
+	 * Appends the text of a page, recognized after turning its image by
+	 * rotation degrees, to the journal and writes it to the disk.
+	 */
+	public synchronized void record(int page, int rotation, String text) throws IOException {
+		byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+		var record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + textBytes.length);
+		record.putInt(page).putInt(rotation).putInt(textBytes.length).put(textBytes).flip();
+
+		writeFully(channel, record);
+		channel.force(false);
+	}
+
+	/**
+	 * Closes and deletes the journal, once the Word document has been saved.
+	 */
+	public void delete() throws IOException {
+		close();
+		Files.deleteIfExists(journalFile.toPath());
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
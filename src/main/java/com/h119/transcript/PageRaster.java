@@ -0,0 +1,186 @@
+package com.h119.transcript;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+
+/**
+ * The pixels of a rendered page in the layout TessBaseAPI.SetImage expects,
+ * so that a page can be recognized without saving it as an image file and
+ * reading it back.
+ *
+ * Binary images are packed 8 pixels per byte with 1 being white (which is
+ * how BufferedImage.TYPE_BYTE_BINARY stores them), grayscale images use one
+ * byte and color images three bytes (red, green, blue) per pixel.
+ */
+class PageRaster {
+
+	private final byte[] data;
+	private final int width;
+	private final int height;
+	private final int bytesPerPixel;
+	private final int bytesPerLine;
+	private final int dpi;
+
+	private PageRaster(byte[] data, int width, int height, int bytesPerPixel, int bytesPerLine, int dpi) {
+		this.data = data;
+		this.width = width;
+		this.height = height;
+		this.bytesPerPixel = bytesPerPixel;
+		this.bytesPerLine = bytesPerLine;
+		this.dpi = dpi;
+	}
+
+	/**
+	 * Grayscale and binary images are used without copying their pixels,
+	 * so the image must not be modified afterwards.
+	 */
+	public static PageRaster of(PageImage pageImage) {
+		BufferedImage image = pageImage.getImage();
+		int dpi = pageImage.getDpi();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		Raster raster = image.getRaster();
+		var sampleModel = raster.getSampleModel();
+
+		if (
+			image.getType() == BufferedImage.TYPE_BYTE_GRAY &&
+			raster.getParent() == null &&
+			sampleModel instanceof ComponentSampleModel
+		) {
+			return new PageRaster(
+				((DataBufferByte) raster.getDataBuffer()).getData(),
+				width, height, 1,
+				((ComponentSampleModel) sampleModel).getScanlineStride(),
+				dpi
+			);
+		}
+
+		if (
+			image.getType() == BufferedImage.TYPE_BYTE_BINARY &&
+			raster.getParent() == null &&
+			sampleModel instanceof MultiPixelPackedSampleModel &&
+			((MultiPixelPackedSampleModel) sampleModel).getPixelBitStride() == 1
+		) {
+			return new PageRaster(
+				((DataBufferByte) raster.getDataBuffer()).getData(),
+				width, height, 0,
+				((MultiPixelPackedSampleModel) sampleModel).getScanlineStride(),
+				dpi
+			);
+		}
+
+		var data = new byte[width * height * 3];
+
+		if (image.getType() == BufferedImage.TYPE_INT_RGB && raster.getParent() == null) {
+			int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+
+			for (int i = 0, j = 0; i < width * height; ++i) {
+				int pixel = pixels[i];
+				data[j++] = (byte) (pixel >> 16);
+				data[j++] = (byte) (pixel >> 8);
+				data[j++] = (byte) pixel;
+			}
+		}
+		else {
+			var line = new int[width];
+
+			for (int y = 0, j = 0; y < height; ++y) {
+				image.getRGB(0, y, width, 1, line, 0, width);
+
+				for (int pixel: line) {
+					data[j++] = (byte) (pixel >> 16);
+					data[j++] = (byte) (pixel >> 8);
+					data[j++] = (byte) pixel;
+				}
+			}
+		}
+
+		return new PageRaster(data, width, height, 3, width * 3, dpi);
+	}
+
+	/**
+	 * The page rotated clockwise by a multiple of 90 degrees, by moving
+	 * every pixel to its new place (so without any loss).
+	 */
+	public PageRaster rotated(int degrees) {
+		int rotation = Math.floorMod(degrees, 360);
+
+		if (rotation == 0)
+			return this;
+
+		if (rotation % 90 != 0)
+			throw new IllegalArgumentException(String.format("Not a multiple of 90 degrees: %d", degrees));
+
+		boolean swapped = rotation != 180;
+		int newWidth = swapped ? height : width;
+		int newHeight = swapped ? width : height;
+		int newBytesPerLine = bytesPerPixel == 0 ? (newWidth + 7) / 8 : newWidth * bytesPerPixel;
+		var newData = new byte[newBytesPerLine * newHeight];
+
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int newX;
+				int newY;
+
+				if (rotation == 90) {
+					newX = height - 1 - y;
+					newY = x;
+				}
+				else if (rotation == 180) {
+					newX = width - 1 - x;
+					newY = height - 1 - y;
+				}
+				else {
+					newX = y;
+					newY = width - 1 - x;
+				}
+
+				if (bytesPerPixel == 0) {
+					// 8 pixels per byte, the first pixel in the highest bit
+					if ((data[y * bytesPerLine + (x >> 3)] & (0x80 >> (x & 7))) != 0)
+						newData[newY * newBytesPerLine + (newX >> 3)] |= (byte) (0x80 >> (newX & 7));
+				}
+				else {
+					System.arraycopy(
+						data, y * bytesPerLine + x * bytesPerPixel,
+						newData, newY * newBytesPerLine + newX * bytesPerPixel,
+						bytesPerPixel
+					);
+				}
+			}
+		}
+
+		return new PageRaster(newData, newWidth, newHeight, bytesPerPixel, newBytesPerLine, dpi);
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * 0 for binary images (as expected by TessBaseAPI.SetImage).
+	 */
+	public int getBytesPerPixel() {
+		return bytesPerPixel;
+	}
+
+	public int getBytesPerLine() {
+		return bytesPerLine;
+	}
+
+	public int getDpi() {
+		return dpi;
+	}
+}
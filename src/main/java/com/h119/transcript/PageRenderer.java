@@ -0,0 +1,130 @@
+package com.h119.transcript;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.tools.imageio.ImageIOUtil;
+
+/**
+ * The rendering resources of a single worker: its own copy of the document
+ * and a PDFRenderer for it, as PDFRenderer is not thread-safe.
+ */
+class PageRenderer implements Closeable {
+
+	private final PDDocument document;
+	private final PDFRenderer pdfRenderer;
+	private final RenderMode renderMode;
+	private final ResolutionPlanner resolutionPlanner;
+	private TextLayerExtractor textLayerExtractor;
+
+	public PageRenderer(PDDocument document, ProcessingOptions options) {
+		this.document = document;
+		this.pdfRenderer = new PDFRenderer(document);
+		this.renderMode = options.getRenderMode();
+		this.resolutionPlanner = new ResolutionPlanner(options.getMinDpi(), options.getMaxDpi());
+	}
+
+	/**
+	 * Loads a copy of the document. Large files are loaded using temporary
+	 * files (see LoadMode).
+	 *
+	 * Every copy keeps its own resource cache (fonts, images, color spaces):
+	 * the cached resources refer to the objects of the document that loaded
+	 * them and are not safe to use from several threads, so they are not
+	 * shared with the other copies.
+	 */
+	public static PageRenderer open(File pdfFile, ProcessingOptions options) throws IOException {
+		MemoryUsageSetting memoryUsage =
+			loadMode(pdfFile, options).getMemoryUsageSetting(options.getLoadThresholdBytes());
+
+		return new PageRenderer(PDDocument.load(pdfFile, memoryUsage), options);
+	}
+
+	/**
+	 * The mode a file is loaded with by open().
+	 */
+	public static LoadMode loadMode(File pdfFile, ProcessingOptions options) {
+		return options.getLoadMode().resolve(pdfFile, options.getLoadThresholdBytes());
+	}
+
+	public int getNumberOfPages() {
+		return document.getNumberOfPages();
+	}
+
+	/**
+	 * Renders a page with the image type chosen by the render mode and the
+	 * resolution chosen by the resolution planner. The images of grayscale
+	 * and black and white pages are saved as 8 and 1 bit PNG files
+	 * respectively.
+	 */
+	public PageImage render(int page) throws IOException {
+		var event = new FlightEvents.Render();
+		event.begin();
+
+		PDPage pdPage = document.getPage(page);
+		ImageType imageType = renderMode.getImageType(pdPage);
+		int dpi = resolutionPlanner.planDpi(pdPage);
+
+		var pageImage = new PageImage(pdfRenderer.renderImageWithDPI(page, dpi, imageType), dpi);
+
+		if (event.shouldCommit()) {
+			event.page = page + 1;
+			event.dpi = dpi;
+			event.width = pageImage.getImage().getWidth();
+			event.height = pageImage.getImage().getHeight();
+			event.bytes = pageImage.getPixelBytes();
+			event.commit();
+		}
+
+		return pageImage;
+	}
+
+	/**
+	 * @return the text of the page or null if it doesn't have a usable text
+	 *         layer and has to be recognized (see TextLayerExtractor)
+	 */
+	public String extractText(int page) throws IOException {
+		if (textLayerExtractor == null)
+			textLayerExtractor = new TextLayerExtractor();
+
+		return textLayerExtractor.extract(document, page);
+	}
+
+	/**
+	 * Saves the image of a page (numbered from 0) as imageFileName.
+	 */
+	public static void writeImage(int page, PageImage pageImage, String imageFileName) throws IOException {
+		var event = new FlightEvents.ImageEncode();
+		event.begin();
+
+		ImageIOUtil.writeImage(pageImage.getImage(), imageFileName, pageImage.getDpi());
+
+		if (event.shouldCommit()) {
+			event.page = page + 1;
+			event.dpi = pageImage.getDpi();
+			event.width = pageImage.getImage().getWidth();
+			event.height = pageImage.getImage().getHeight();
+			event.file = imageFileName;
+			event.bytes = new File(imageFileName).length();
+			event.commit();
+		}
+	}
+
+	/**
+	 * The name of the image file of a page (pages are numbered from 0).
+	 */
+	public static String imageFileName(String fileNoExtension, int page) {
+		return fileNoExtension + "-" + (page + 1) + ".png";
+	}
+
+	@Override
+	public void close() throws IOException {
+		document.close();
+	}
+}
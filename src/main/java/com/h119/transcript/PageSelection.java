@@ -0,0 +1,186 @@
+package com.h119.transcript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The pages of a document to process, given by page numbers and ranges
+ * separated by commas, e.g. "1-20,45,100-" (the pages are numbered from 1,
+ * a range without an end lasts until the last page, one without a start
+ * begins with the first page).
+ *
+ * Only the selected pages are rendered and recognized, the others are left
+ * out of the Word document. The pages keep their numbers in the document
+ * (e.g. in the names of the page images and in the log).
+ */
+class PageSelection {
+
+	public static final PageSelection ALL = new PageSelection(List.of());
+
+	/**
+	 * A range of pages numbered from 0, both ends included.
+	 */
+	private static class Range {
+		final int first;
+		final int last;
+
+		Range(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		public String toString() {
+			if (first == last)
+				return Integer.toString(first + 1);
+
+			return String.format(
+				"%d-%s",
+				first + 1,
+				last < Integer.MAX_VALUE ? Integer.toString(last + 1) : ""
+			);
+		}
+	}
+
+	/** Empty if every page is selected. */
+	private final List<Range> ranges;
+
+	private PageSelection(List<Range> ranges) {
+		this.ranges = ranges;
+	}
+
+	/**
+	 * @param selection e.g. "1-20,45,100-"; empty (or null) for every page
+	 * @throws IllegalArgumentException if selection is not a valid
+	 *         selection
+	 */
+	public static PageSelection parse(String selection) {
+		if (selection == null || selection.isBlank())
+			return ALL;
+
+		var ranges = new ArrayList<Range>();
+
+		for (var part: selection.split(",")) {
+			part = part.strip();
+
+			if (part.isEmpty())
+				continue;
+
+			int dash = part.indexOf('-');
+
+			if (dash < 0) {
+				int page = pageNumber(part, selection);
+				ranges.add(new Range(page, page));
+				continue;
+			}
+
+			String start = part.substring(0, dash).strip();
+			String end = part.substring(dash + 1).strip();
+
+			if (start.isEmpty() && end.isEmpty())
+				throw invalid(selection);
+
+			int first = start.isEmpty() ? 0 : pageNumber(start, selection);
+			int last = end.isEmpty() ? Integer.MAX_VALUE : pageNumber(end, selection);
+
+			if (first > last)
+				throw invalid(selection);
+
+			ranges.add(new Range(first, last));
+		}
+
+		if (ranges.isEmpty())
+			return ALL;
+
+		return new PageSelection(ranges);
+	}
+
+	public boolean isAll() {
+		return ranges.isEmpty();
+	}
+
+	/**
+	 * Whether a page (numbered from 0) is selected.
+	 */
+	public boolean contains(int page) {
+		if (ranges.isEmpty())
+			return true;
+
+		for (var range: ranges) {
+			if (page >= range.first && page <= range.last)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * The number of the selected pages of a document of pageCount pages.
+	 */
+	public int count(int pageCount) {
+		int count = 0;
+
+		for (int page = 0; page < pageCount; ++page) {
+			if (contains(page))
+				count += 1;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Makes sure that some of the pages of a document of pageCount pages are
+	 * selected, so that a selection beyond the end of the document (e.g.
+	 * "500-" for 100 pages) doesn't produce an empty Word document.
+	 *
+	 * @throws IllegalArgumentException if none of the pages is selected
+	 */
+	public void checkSelected(int pageCount) {
+		if (count(pageCount) == 0) {
+			throw new IllegalArgumentException(
+				String.format("The page selection (%s) matches none of the %d pages of the document", this, pageCount)
+			);
+		}
+	}
+
+	/**
+	 * The selection in the format parse() reads, empty if every page is
+	 * selected.
+	 */
+	@Override
+	public String toString() {
+		var selection = new StringBuilder();
+
+		for (var range: ranges) {
+			if (selection.length() > 0)
+				selection.append(',');
+
+			selection.append(range);
+		}
+
+		return selection.toString();
+	}
+
+	/**
+	 * @return the page numbered from 0
+	 */
+	private static int pageNumber(String number, String selection) {
+		try {
+			int page = Integer.parseInt(number);
+
+			if (page < 1)
+				throw invalid(selection);
+
+			return page - 1;
+		}
+		catch (NumberFormatException nfe) {
+			throw invalid(selection);
+		}
+	}
+
+	private static IllegalArgumentException invalid(String selection) {
+		return new IllegalArgumentException(
+			String.format("Invalid page selection: %s (e.g. 1-20,45,100-)", selection)
+		);
+	}
+}
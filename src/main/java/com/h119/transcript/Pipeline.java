@@ -0,0 +1,601 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.h119.transcript.util.LanguageCodes.Language;
+
+/**
+ * Renders the pages of a PDF file and performs OCR on them at the same time.
+ *
+ * Every page goes through its stages on the shared pools of the
+ * JobScheduler, the rendering and the OCR limited to the number of render
+ * and OCR workers, so page N is recognized while page N + 1 is being
+ * rendered. Only a fixed number of pages are in flight: when the OCR falls
+ * behind, no more pages are rendered until it catches up, so the memory
+ * used stays the same regardless of the length of the document. The
+ * rendered pages are also limited by the MemoryBudget. Cancelling
+ * the process interrupts every page in flight.
+ *
+ * Only the pages of the PageSelection of the options are processed, the
+ * others are left out of the Word document.
+ *
+ * The rendered pixels are handed to Tesseract in memory; the pages are only
+ * saved as PNG images if they are to be kept. The pages that have a text
+ * layer are neither rendered nor recognized, their text is extracted by the
+ * render stage. The OCR stage turns the pages upright before recognizing
+ * them (if their orientation can be detected with confidence).
+ *
+ * The text of every page is recorded in a PageJournal as soon as it's ready,
+ * so if the process is cancelled (or killed), running it again continues
+ * with the pages that are missing. Unless WordExport is to be used, the
+ * pages are also written to the Word document in page order as they are
+ * done (see StreamingWordExport).
+ */
+class Pipeline {
+
+	private static final int QUEUED_PAGES_PER_OCR_WORKER = 2;
+
+	/**
+	 * A page that has been rendered and is waiting for OCR, or the text
+	 * layer of a page.
+	 */
+	private static class RenderedPage {
+		final int page;
+		final PageRaster raster;
+		/** The rendered image if it's to be kept. */
+		final PageImage image;
+		final String text;
+
+		RenderedPage(int page, PageRaster raster, PageImage image, String text) {
+			this.page = page;
+			this.raster = raster;
+			this.image = image;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Where the text of a page goes once it's done.
+	 *
+	 * The text is written to the journal (for continuing the run if it's
+	 * cancelled) and either kept in pages until the Word document is saved
+	 * or, if there is a streamingExport, written to the document right away
+	 * and not kept, so that the memory used doesn't grow with the document.
+	 */
+	private static class PageResults {
+		final DocumentPages pages;
+		/** The pages done in a previous run (see PageJournal). */
+		final BitSet restoredPages;
+		final PageJournal journal;
+		final StreamingWordExport streamingExport;
+
+		PageResults(
+			DocumentPages pages, BitSet restoredPages,
+			PageJournal journal, StreamingWordExport streamingExport
+		) {
+			this.pages = pages;
+			this.restoredPages = restoredPages;
+			this.journal = journal;
+			this.streamingExport = streamingExport;
+		}
+
+		void add(int page, String text, ProcessMetrics metrics) throws IOException {
+			try (var timer = metrics.time(page, ProcessMetrics.Stage.SAVE_TEXT)) {
+				journal.record(page, pages.getRotation(page), text);
+
+				if (streamingExport != null)
+					streamingExport.addPage(page, text);
+				else
+					pages.setText(page, text);
+
+				timer.setBytes(text.getBytes(StandardCharsets.UTF_8).length);
+			}
+		}
+	}
+
+	private final File pdfFile;
+	private final Language documentLanguage;
+	private final ProcessingOptions options;
+	private final ProcessListener listener;
+	private final TesseractPool sharedPool;
+	private final ProcessMetrics metrics;
+
+	/**
+	 * The part of the progress (out of 1000) taken by rendering and OCR.
+	 */
+	private int processingProgress = 600;
+
+	/** The number of the selected pages (see PageSelection). */
+	private int selectedPages = 1;
+
+	public Pipeline(
+		File pdfFile, Language documentLanguage,
+		ProcessingOptions options, ProcessListener listener
+	) {
+		this(pdfFile, documentLanguage, options, listener, null);
+	}
+
+	/**
+	 * The document is recognized with the engines of sharedPool (which must
+	 * be initialized for the language of the document) instead of starting
+	 * new ones, so that processing several documents doesn't pay for
+	 * loading the training data every time. The pool is not closed.
+	 */
+	public Pipeline(
+		File pdfFile, Language documentLanguage,
+		ProcessingOptions options, ProcessListener listener,
+		TesseractPool sharedPool
+	) {
+		this.pdfFile = pdfFile;
+		this.documentLanguage = documentLanguage;
+		this.options = options;
+		this.listener = listener;
+		this.sharedPool = sharedPool;
+		this.metrics = new ProcessMetrics(pdfFile);
+	}
+
+	/**
+	 * Processes the document and saves the text as a Word document next to
+	 * the PDF file.
+	 *
+	 * @return the Word file or null if the process has been cancelled
+	 */
+	public File run() throws Exception {
+		String fileNoExtension = options.getOutputBase(pdfFile);
+		String fingerprint = PageJournal.fingerprint(pdfFile, documentLanguage.getAlpha3(), options);
+
+		try (var journal = PageJournal.open(PageJournal.journalFile(fileNoExtension), fingerprint)) {
+			File exportFile = process(fileNoExtension, journal);
+
+			// The journal is kept until the Word document has been saved
+			if (exportFile != null) {
+				journal.delete();
+				metrics.report(listener, fileNoExtension, options.isSaveMetrics());
+			}
+
+			return exportFile;
+		}
+	}
+
+	private File process(String fileNoExtension, PageJournal journal) throws Exception {
+		// The streamed Word document is done when the last page is
+		processingProgress = options.isStreamWordExport() ? 1000 : 600;
+
+		LoadMode loadMode = PageRenderer.loadMode(pdfFile, options);
+
+		if (loadMode != LoadMode.MEMORY)
+			listener.log(String.format("The document is loaded into: %s", loadMode));
+
+		PageRenderer firstRenderer = PageRenderer.open(pdfFile, options);
+		int documentPages = firstRenderer.getNumberOfPages();
+		PageSelection selection = options.getPageSelection();
+
+		var pages = new DocumentPages(documentPages);
+		var restoredPages = new BitSet(documentPages);
+
+		// The journal is restored before the pool is started, only the renderer is open if it fails
+		try {
+			selection.checkSelected(documentPages);
+			selectedPages = selection.count(documentPages);
+
+			listener.progress(0, 1000);
+			listener.log(String.format("The document consists of %d pages", documentPages));
+
+			if (!selection.isAll())
+				listener.log(String.format("Processing the selected pages (%s): %d pages", selection, selectedPages));
+
+			if (journal.restore(pages, selection) > 0) {
+				for (int page = 0; page < documentPages; ++page) {
+					if (pages.hasText(page))
+						restoredPages.set(page);
+				}
+
+				listener.log(
+					String.format(
+						"Continuing the previous run: %d of the %d pages are already done",
+						restoredPages.cardinality(), selectedPages
+					)
+				);
+			}
+		}
+		catch (RuntimeException re) {
+			firstRenderer.close();
+			throw re;
+		}
+
+		int renderWorkers = Math.max(1, Math.min(options.getRenderWorkers(), selectedPages));
+		int ocrWorkers = Math.max(1, Math.min(options.getOcrWorkers(), selectedPages));
+
+		TesseractPool pool = sharedPool;
+
+		if (pool != null) {
+			ocrWorkers = Math.min(ocrWorkers, pool.size());
+		}
+		else {
+			try {
+				pool = new TesseractPool(documentLanguage.getAlpha3(), ocrWorkers);
+				pool.setCache(options.getOcrCache());
+			}
+			catch (RuntimeException re) {
+				firstRenderer.close();
+				throw re;
+			}
+		}
+
+		listener.log(
+			String.format(
+				"Rendering and performing OCR at the same time (%d render and %d OCR workers)...",
+				renderWorkers, ocrWorkers
+			)
+		);
+
+		File exportFile = new File(fileNoExtension + ".docx");
+
+		try (
+			firstRenderer;
+			var streamingExport =
+				options.isStreamWordExport() ? new StreamingWordExport(exportFile, documentPages) : null;
+			var detector = openOrientationDetector(ocrWorkers)
+		) {
+			if (streamingExport != null) {
+				for (int page = 0; page < documentPages; ++page) {
+					if (!selection.contains(page))
+						streamingExport.skipPage(page);
+					else if (restoredPages.get(page)) {
+						streamingExport.addPage(page, pages.getText(page));
+						pages.setText(page, null);
+					}
+				}
+			}
+
+			runWorkers(
+				pool, detector, firstRenderer, fileNoExtension,
+				new PageResults(pages, restoredPages, journal, streamingExport), renderWorkers, ocrWorkers
+			);
+
+			if (listener.isCancelled())
+				return null;
+
+			logPagesToReview(pages);
+
+			if (streamingExport != null) {
+				try (var timer = metrics.time(-1, ProcessMetrics.Stage.SAVE_DOCUMENT)) {
+					streamingExport.finish();
+					timer.setBytes(exportFile.length());
+				}
+
+				listener.progress(1000, 1000);
+
+				return exportFile;
+			}
+		}
+		finally {
+			if (pool != sharedPool)
+				pool.close();
+		}
+
+		try (var timer = metrics.time(-1, ProcessMetrics.Stage.SAVE_DOCUMENT)) {
+			if (!WordExport.save(pages.getTexts(), exportFile, listener))
+				return null;
+
+			timer.setBytes(exportFile.length());
+		}
+
+		return exportFile;
+	}
+
+	/**
+	 * @return the detector or null if the orientation is not to be detected
+	 *         (or can't be, because the osd training data is missing)
+	 */
+	private OrientationDetector openOrientationDetector(int size) {
+		if (!options.isDetectOrientation())
+			return null;
+
+		if (!OrientationDetector.isAvailable()) {
+			listener.log(
+				"tessdata/osd.traineddata is missing, so the orientation of the pages is not detected. " +
+				"It can be downloaded from: https://github.com/tesseract-ocr/tessdata"
+			);
+			return null;
+		}
+
+		return new OrientationDetector(size);
+	}
+
+	private void logPagesToReview(DocumentPages pages) {
+		var pagesToReview = pages.getPagesToReview();
+
+		if (pagesToReview.isEmpty())
+			return;
+
+		var pageNumbers = new StringBuilder();
+
+		for (var page: pagesToReview) {
+			if (pageNumbers.length() > 0)
+				pageNumbers.append(", ");
+
+			pageNumbers.append(page + 1);
+		}
+
+		listener.log(String.format("The orientation of these pages is uncertain, please check them: %s", pageNumbers));
+	}
+
+	private void runWorkers(
+		TesseractPool pool, OrientationDetector detector, PageRenderer firstRenderer,
+		String fileNoExtension, PageResults results, int renderWorkers, int ocrWorkers
+	) throws Exception {
+		var scheduler = JobScheduler.getDefault();
+		var stages = new PageStages(
+			pool, detector, fileNoExtension, results,
+			JobScheduler.limit(scheduler.cpu(), renderWorkers),
+			// A shared pool limits the OCR of every document using it to its engines as well
+			JobScheduler.limit(pool.getExecutor(), ocrWorkers),
+			scheduler.io()
+		);
+
+		// The first render worker reuses the document opened by run()
+		stages.renderers.add(firstRenderer);
+
+		// As many pages as the workers and the rendered pages waiting for them, as long as they fit into the memory budget
+		var pagesInFlight = new Semaphore(renderWorkers + ocrWorkers * (1 + QUEUED_PAGES_PER_OCR_WORKER));
+		var budget = MemoryBudget.getDefault();
+		var pageResults = new ArrayList<CompletableFuture<Void>>();
+		DocumentPages pages = results.pages;
+
+		try (var scope = scheduler.openScope()) {
+			for (int page = 0; page < pages.getPageCount() && !listener.isCancelled() && !scope.isCancelled(); ++page) {
+				if (!options.getPageSelection().contains(page))
+					continue;
+
+				if (results.restoredPages.get(page)) {
+					reportProgress(stages.stepsDone.addAndGet(2));
+					continue;
+				}
+
+				pagesInFlight.acquire();
+
+				MemoryBudget.Reservation reservation;
+
+				try {
+					reservation = budget.reserve(stages.largestPage.get());
+				}
+				catch (InterruptedException ie) {
+					pagesInFlight.release();
+					throw ie;
+				}
+
+				var pageResult = stages.process(scope, page, reservation);
+				pageResult.whenComplete((result, exception) -> {
+					reservation.close();
+					pagesInFlight.release();
+				});
+				pageResults.add(pageResult);
+			}
+
+			scope.await(pageResults, listener);
+		}
+		finally {
+			// The scope has waited for the render stages, firstRenderer is closed by process()
+			for (var renderer: stages.openedRenderers)
+				renderer.close();
+		}
+	}
+
+	/**
+	 * The stages of a page: rendering (or extracting the text layer) and
+	 * OCR on the CPU executor of the JobScheduler, saving the image and the
+	 * text on its I/O executor. The render and OCR stages are limited to
+	 * the number of workers given in the options.
+	 */
+	private class PageStages {
+		final TesseractPool pool;
+		final OrientationDetector detector;
+		final String fileNoExtension;
+		final PageResults results;
+		final Executor render;
+		final Executor ocr;
+		final Executor io;
+
+		/**
+		 * The documents opened for rendering that are not in use (every render
+		 * stage needs its own, as PDFRenderer is not thread-safe).
+		 */
+		final Queue<PageRenderer> renderers = new ConcurrentLinkedQueue<>();
+		final Queue<PageRenderer> openedRenderers = new ConcurrentLinkedQueue<>();
+
+		final AtomicInteger stepsDone = new AtomicInteger(0);
+
+		/** The memory reserved for the pages that haven't been rendered yet. */
+		final AtomicReference<MemoryBudget.Footprint> largestPage;
+
+		PageStages(
+			TesseractPool pool, OrientationDetector detector, String fileNoExtension,
+			PageResults results, Executor render, Executor ocr, Executor io
+		) {
+			this.pool = pool;
+			this.detector = detector;
+			this.fileNoExtension = fileNoExtension;
+			this.results = results;
+			this.render = render;
+			this.ocr = ocr;
+			this.io = io;
+			this.largestPage = new AtomicReference<>(MemoryBudget.Footprint.estimate(options));
+		}
+
+		CompletableFuture<Void> process(JobScheduler.Scope scope, int page, MemoryBudget.Reservation reservation) {
+			return scope.submit(render, () -> renderPage(page, reservation)).thenCompose(rendered -> {
+				if (rendered == null)
+					return CompletableFuture.completedFuture(null);
+
+				if (rendered.text != null) {
+					return scope.submit(io, () -> {
+						results.add(page, rendered.text, metrics);
+
+						// The page doesn't need OCR either, both of its steps are done
+						reportProgress(stepsDone.addAndGet(2));
+						return null;
+					});
+				}
+
+				CompletableFuture<Void> saved =
+					rendered.image != null
+						? scope.submit(io, () -> saveImage(page, rendered.image))
+						: CompletableFuture.completedFuture(null);
+
+				CompletableFuture<Void> recognized =
+					scope.submit(ocr, () -> recognizePage(rendered)).thenCompose(text -> {
+						if (text == null)
+							return CompletableFuture.completedFuture(null);
+
+						return scope.submit(io, () -> {
+							results.add(page, text, metrics);
+							reportProgress(stepsDone.incrementAndGet());
+							return null;
+						});
+					});
+
+				return CompletableFuture.allOf(saved, recognized);
+			});
+		}
+
+		/**
+		 * @return the rendered page (with its image if it's to be kept) or
+		 *         its text layer; null if the process has been cancelled
+		 */
+		private RenderedPage renderPage(int page, MemoryBudget.Reservation reservation) throws IOException {
+			if (listener.isCancelled())
+				return null;
+
+			PageRenderer renderer = takeRenderer();
+
+			try {
+				String text = options.isUseTextLayer()
+					? metrics.record(page, ProcessMetrics.Stage.EXTRACT_TEXT, () -> renderer.extractText(page))
+					: null;
+
+				if (text != null) {
+					listener.log(String.format("Page %d has a text layer, it is extracted instead of recognized", page + 1));
+					reservation.resize(MemoryBudget.Footprint.NONE);
+
+					return new RenderedPage(page, null, null, text);
+				}
+
+				PageImage pageImage;
+
+				try (var timer = metrics.time(page, ProcessMetrics.Stage.RENDER)) {
+					pageImage = renderer.render(page);
+					timer.setBytes(pageImage.getPixelBytes());
+				}
+
+				// The next pages are expected to be as large as the largest one so far
+				var footprint = MemoryBudget.Footprint.of(pageImage);
+				reservation.resize(footprint);
+				largestPage.accumulateAndGet(footprint, MemoryBudget.Footprint::max);
+
+				if (!options.isKeepImages())
+					listener.log(String.format("Rendered page %d at %d DPI", page + 1, pageImage.getDpi()));
+
+				reportProgress(stepsDone.incrementAndGet());
+
+				return new RenderedPage(
+					page, PageRaster.of(pageImage), options.isKeepImages() ? pageImage : null, null
+				);
+			}
+			finally {
+				renderers.add(renderer);
+			}
+		}
+
+		/**
+		 * A document that is not in use by another render stage, opened if
+		 * there's none.
+		 */
+		private PageRenderer takeRenderer() throws IOException {
+			PageRenderer renderer = renderers.poll();
+
+			if (renderer == null) {
+				renderer = PageRenderer.open(pdfFile, options);
+				openedRenderers.add(renderer);
+			}
+
+			return renderer;
+		}
+
+		private Void saveImage(int page, PageImage pageImage) throws IOException {
+			String imageFileName = PageRenderer.imageFileName(fileNoExtension, page);
+
+			listener.log(String.format("Saving %s...", imageFileName));
+
+			try (var timer = metrics.time(page, ProcessMetrics.Stage.WRITE_IMAGE)) {
+				PageRenderer.writeImage(page, pageImage, imageFileName);
+				timer.setBytes(new File(imageFileName).length());
+			}
+
+			results.pages.setImageFile(page, imageFileName);
+
+			return null;
+		}
+
+		/**
+		 * @return the text of the page or null if the process has been
+		 *         cancelled
+		 */
+		private String recognizePage(RenderedPage page) throws InterruptedException {
+			if (listener.isCancelled())
+				return null;
+
+			listener.log(String.format("Performing OCR on page %d", page.page + 1));
+
+			PageRaster raster = uprightRaster(page);
+
+			return metrics.record(page.page, ProcessMetrics.Stage.OCR, () -> pool.recognize(raster, page.page));
+		}
+
+		/**
+		 * The raster of the page, turned upright if its orientation is
+		 * detected.
+		 */
+		private PageRaster uprightRaster(RenderedPage page) throws InterruptedException {
+			if (detector == null)
+				return page.raster;
+
+			OrientationDetector.PageOrientation orientation = metrics.record(
+				page.page, ProcessMetrics.Stage.DETECT_ORIENTATION, () -> detector.detect(page.raster)
+			);
+
+			String message = OrientationDetector.describe(page.page, orientation);
+
+			if (message != null)
+				listener.log(message);
+
+			if (orientation.isCertain())
+				return page.raster.rotated(orientation.getRotation());
+
+			if (orientation.needsReview())
+				results.pages.setNeedsReview(page.page, true);
+
+			return page.raster;
+		}
+	}
+
+	/**
+	 * Rendering and OCR take the first processingProgress (out of 1000) of
+	 * the progress, every selected page counting twice: once when rendered and once
+	 * when recognized.
+	 */
+	private void reportProgress(int stepsDone) {
+		listener.progress(processingProgress * (long) stepsDone / (2L * selectedPages), 1000);
+	}
+}
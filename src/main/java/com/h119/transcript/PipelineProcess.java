@@ -0,0 +1,67 @@
+package com.h119.transcript;
+
+import java.io.File;
+
+import javafx.application.Platform;
+import javafx.scene.control.Button;
+
+import static com.h119.transcript.util.LanguageCodes.Language;
+
+/**
+ * Runs the whole process (rendering, OCR and saving the Word document) as a
+ * single task, with the rendering and the OCR overlapping (see Pipeline).
+ * It is used when the pages don't need to be reviewed before the OCR.
+ */
+class PipelineProcess extends ProcessTask {
+
+	private final File pdfFile;
+	private final Language documentLanguage;
+	private final Button openFileButton;
+	private final Button cancelButton;
+	private final ProcessingOptions options;
+
+	public PipelineProcess(
+		File pdfFile, Language documentLanguage,
+		UiEventBus events, Button openFileButton, Button cancelButton,
+		ProcessingOptions options
+	) {
+		super(events);
+		this.pdfFile = pdfFile;
+		this.documentLanguage = documentLanguage;
+		this.openFileButton = openFileButton;
+		this.cancelButton = cancelButton;
+		this.options = options;
+	}
+
+	@Override
+	public Void call() throws InterruptedException {
+		try {
+			var pipeline = new Pipeline(pdfFile, documentLanguage, options, this);
+
+			File exportFile = pipeline.run();
+
+			if (exportFile == null) {
+				log("Cancelled");
+				progress(0, 1000);
+				return null;
+			}
+
+			log(String.format("The Word file has been created: %s", exportFile.getPath()));
+		}
+		catch (Throwable e) {
+			logFailure(e);
+		}
+
+		return null;
+	}
+
+	@Override
+	protected void done() {
+		super.done();
+		log("Done");
+		Platform.runLater(() -> {
+			openFileButton.setDisable(false);
+			cancelButton.setDisable(true);
+		});
+	}
+}
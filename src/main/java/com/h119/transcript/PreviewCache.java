@@ -0,0 +1,148 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.scene.image.Image;
+
+/**
+ * Screen-sized previews of page images for the image processing window.
+ *
+ * The page images are decoded (and scaled down while decoding) on
+ * background threads, so that the window doesn't stop while a page is
+ * loaded, and the neighbors of the shown page can be loaded before they are
+ * asked for. The previews are kept in a least recently used cache bounded
+ * by the memory of their pixels.
+ */
+class PreviewCache implements AutoCloseable {
+
+	public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+
+	private static final int LOADER_THREADS = 2;
+
+	private final double maxWidth;
+	private final double maxHeight;
+	private final long maxBytes;
+
+	private final ExecutorService loader;
+
+	/** The loaded previews, in the order of their last use. */
+	private final LinkedHashMap<String, Image> previews = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, CompletableFuture<Image>> loading = new HashMap<>();
+	private long bytes = 0;
+
+	/**
+	 * @param maxWidth the width of the previews (at most)
+	 * @param maxHeight the height of the previews (at most)
+	 */
+	public PreviewCache(double maxWidth, double maxHeight, long maxBytes) {
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+		this.maxBytes = maxBytes;
+
+		this.loader = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+			var thread = new Thread(runnable, "preview-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * The preview of an image file: completed right away if it's in the
+	 * cache, otherwise when it has been loaded on a background thread.
+	 */
+	public synchronized CompletableFuture<Image> get(String imageFile) {
+		Image preview = previews.get(imageFile);
+
+		if (preview != null)
+			return CompletableFuture.completedFuture(preview);
+
+		CompletableFuture<Image> future = loading.get(imageFile);
+
+		if (future == null) {
+			future = CompletableFuture.supplyAsync(() -> load(imageFile), loader);
+			loading.put(imageFile, future);
+
+			future.whenComplete((loadedPreview, exception) -> loaded(imageFile, loadedPreview));
+		}
+
+		return future;
+	}
+
+	/**
+	 * Starts loading the preview of an image file if it's not in the cache.
+	 */
+	public void prefetch(String imageFile) {
+		get(imageFile);
+	}
+
+	/**
+	 * Forgets the previews and stops loading them.
+	 */
+	@Override
+	public synchronized void close() {
+		loader.shutdownNow();
+		previews.clear();
+		loading.clear();
+		bytes = 0;
+	}
+
+	private Image load(String imageFile) {
+		// The image is scaled down while it's decoded, the full image is never in memory
+		var event = new FlightEvents.ImageDecode();
+		event.begin();
+
+		try (var input = new FileInputStream(imageFile)) {
+			var preview = new Image(input, maxWidth, maxHeight, true, true);
+
+			if (preview.isError())
+				throw new IOException(String.format("Could not load %s: %s", imageFile, preview.getException()));
+
+			if (event.shouldCommit()) {
+				event.width = (int) preview.getWidth();
+				event.height = (int) preview.getHeight();
+				event.file = imageFile;
+				event.bytes = new File(imageFile).length();
+				event.commit();
+			}
+
+			return preview;
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	private synchronized void loaded(String imageFile, Image preview) {
+		loading.remove(imageFile);
+
+		if (preview == null || loader.isShutdown())
+			return;
+
+		previews.put(imageFile, preview);
+		bytes += size(preview);
+
+		// Evicts the least recently used previews, but never the one just loaded
+		Iterator<Map.Entry<String, Image>> oldest = previews.entrySet().iterator();
+
+		while (bytes > maxBytes && previews.size() > 1) {
+			var entry = oldest.next();
+			bytes -= size(entry.getValue());
+			oldest.remove();
+		}
+	}
+
+	private static long size(Image preview) {
+		// 4 bytes per pixel
+		return 4L * (long) preview.getWidth() * (long) preview.getHeight();
+	}
+}
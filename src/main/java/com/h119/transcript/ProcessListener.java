@@ -0,0 +1,16 @@
+package com.h119.transcript;
+
+/**
+ * Receives the log messages and the progress of a process and tells it
+ * whether it should stop.
+ *
+ * It doesn't depend on JavaFX, so the processing code can be driven by the
+ * UI and without it alike.
+ */
+interface ProcessListener {
+	void log(String message);
+
+	void progress(long workDone, long max);
+
+	boolean isCancelled();
+}
@@ -0,0 +1,393 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import com.h119.transcript.util.Json;
+
+/**
+ * The time every stage of processing takes for every page of a document
+ * (both wall-clock and CPU time of the thread doing it), the bytes the stage
+ * has written or, for rendering, the size of the rendered pixels.
+ *
+ * When the process is done, a summary (the percentiles of the stages, the
+ * largest page and the slowest pages) is logged, and the measurements can be
+ * saved next to the Word document as JSON (<name>.metrics.json, with the
+ * summary) and CSV (<name>.metrics.csv, one line per page and stage).
+ */
+class ProcessMetrics {
+
+	public enum Stage {
+		RENDER("render"),
+		EXTRACT_TEXT("extract-text"),
+		DETECT_ORIENTATION("detect-orientation"),
+		WRITE_IMAGE("write-image"),
+		READ_IMAGE("read-image"),
+		OCR("ocr"),
+		SAVE_TEXT("save-text"),
+		SAVE_DOCUMENT("save-document");
+
+		private final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	/** The number of the slowest pages in the summary. */
+	private static final int SLOWEST_PAGES = 3;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * A stage of a page (page is -1 for the stages of the whole document).
+	 */
+	private static class Measurement {
+		final int page;
+		final Stage stage;
+		final long wallNanos;
+		/** -1 if the CPU time of the thread is not known (e.g. on virtual threads). */
+		final long cpuNanos;
+		final long bytes;
+
+		Measurement(int page, Stage stage, long wallNanos, long cpuNanos, long bytes) {
+			this.page = page;
+			this.stage = stage;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Measures a stage from its creation until it's closed, on the thread
+	 * that created it.
+	 */
+	public class Timer implements AutoCloseable {
+		private final int page;
+		private final Stage stage;
+		private final long startWall;
+		private final long startCpu;
+		private long bytes = 0;
+
+		private Timer(int page, Stage stage) {
+			this.page = page;
+			this.stage = stage;
+			this.startCpu = currentThreadCpuTime();
+			this.startWall = System.nanoTime();
+		}
+
+		/**
+		 * The bytes written by the stage (or the size of the rendered pixels).
+		 */
+		public void setBytes(long bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void close() {
+			long wallNanos = System.nanoTime() - startWall;
+			long endCpu = currentThreadCpuTime();
+
+			measurements.add(
+				new Measurement(
+					page, stage, wallNanos, startCpu >= 0 && endCpu >= 0 ? endCpu - startCpu : -1, bytes
+				)
+			);
+		}
+	}
+
+	/**
+	 * The work of a stage measured by record(), which may throw E.
+	 */
+	@FunctionalInterface
+	public interface StageWork<T, E extends Exception> {
+		T run() throws E;
+	}
+
+	private final File pdfFile;
+	private final long start = System.nanoTime();
+	private final Queue<Measurement> measurements = new ConcurrentLinkedQueue<>();
+
+	public ProcessMetrics(File pdfFile) {
+		this.pdfFile = pdfFile;
+	}
+
+	/**
+	 * Starts measuring a stage of a page (numbered from 0, -1 for the whole
+	 * document).
+	 */
+	public Timer time(int page, Stage stage) {
+		return new Timer(page, stage);
+	}
+
+	/**
+	 * Measures a stage of a page that doesn't report bytes (see time()).
+	 *
+	 * @return the result of the work
+	 */
+	public <T, E extends Exception> T record(int page, Stage stage, StageWork<T, E> work) throws E {
+		Timer timer = time(page, stage);
+
+		try {
+			return work.run();
+		}
+		finally {
+			timer.close();
+		}
+	}
+
+	/**
+	 * Logs the summary and, if save is set, saves the measurements as
+	 * fileNoExtension.metrics.json and fileNoExtension.metrics.csv.
+	 */
+	public void report(ProcessListener listener, String fileNoExtension, boolean save) {
+		for (var line: summary())
+			listener.log(line);
+
+		if (!save)
+			return;
+
+		var jsonFile = new File(fileNoExtension + ".metrics.json");
+		var csvFile = new File(fileNoExtension + ".metrics.csv");
+
+		try {
+			writeJson(jsonFile);
+			writeCsv(csvFile);
+
+			listener.log(String.format("The metrics have been saved: %s, %s", jsonFile.getName(), csvFile.getName()));
+		}
+		catch (IOException ioe) {
+			listener.log(String.format("Could not save the metrics: %s", ioe));
+		}
+	}
+
+	/**
+	 * The lines of the summary: the percentiles of the wall-clock time of
+	 * every stage, the largest rendered page and the slowest pages.
+	 */
+	public List<String> summary() {
+		var lines = new ArrayList<String>();
+		var all = List.copyOf(measurements);
+
+		lines.add(
+			String.format(Locale.ROOT, "Timing of %s (%.1f s in total):", pdfFile.getName(), (System.nanoTime() - start) / 1e9)
+		);
+
+		for (var stage: Stage.values()) {
+			var stageMeasurements = measurementsOf(all, stage);
+
+			if (stageMeasurements.isEmpty())
+				continue;
+
+			long[] wall = sorted(stageMeasurements, false);
+			long[] cpu = sorted(stageMeasurements, true);
+
+			lines.add(
+				String.format(
+					Locale.ROOT,
+					"  %-18s %5d x  p50 %8.1f ms  p90 %8.1f ms  p99 %8.1f ms  max %8.1f ms  cpu %7.1f s%s",
+					stage, wall.length,
+					millis(percentile(wall, 50)), millis(percentile(wall, 90)), millis(percentile(wall, 99)),
+					millis(wall[wall.length - 1]), sum(cpu) / 1e9,
+					stage == Stage.RENDER || totalBytes(stageMeasurements) == 0
+						? ""
+						: String.format(Locale.ROOT, "  written %.1f MB", megabytes(totalBytes(stageMeasurements)))
+				)
+			);
+		}
+
+		all.stream()
+			.filter(measurement -> measurement.stage == Stage.RENDER)
+			.max(Comparator.comparingLong(measurement -> measurement.bytes))
+			.ifPresent(
+				largest -> lines.add(
+					String.format(
+						Locale.ROOT, "  Largest page: %d (%.1f MB of pixels)", largest.page + 1, megabytes(largest.bytes)
+					)
+				)
+			);
+
+		var slowestPages = pageTimes(all).stream()
+			.sorted(Comparator.comparingLong((long[] pageTime) -> pageTime[1]).reversed())
+			.limit(SLOWEST_PAGES)
+			.map(pageTime -> String.format(Locale.ROOT, "%d (%.1f s)", pageTime[0] + 1, pageTime[1] / 1e9))
+			.collect(Collectors.joining(", "));
+
+		if (!slowestPages.isEmpty())
+			lines.add(String.format("  Slowest pages: %s", slowestPages));
+
+		return lines;
+	}
+
+	public void writeJson(File file) throws IOException {
+		var all = List.copyOf(measurements);
+
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(
+				String.format(
+					Locale.ROOT, "{\"document\":%s,\"seconds\":%.3f,\"stages\":{",
+					Json.quote(pdfFile.getPath()), (System.nanoTime() - start) / 1e9
+				)
+			);
+
+			boolean first = true;
+
+			for (var stage: Stage.values()) {
+				var stageMeasurements = measurementsOf(all, stage);
+
+				if (stageMeasurements.isEmpty())
+					continue;
+
+				long[] wall = sorted(stageMeasurements, false);
+				long[] cpu = sorted(stageMeasurements, true);
+
+				writer.write(
+					String.format(
+						Locale.ROOT,
+						"%s%s:{\"count\":%d,\"wallMs\":%s,\"cpuMs\":%s,\"bytes\":%d}",
+						first ? "" : ",", Json.quote(stage.toString()), wall.length,
+						percentilesJson(wall), percentilesJson(cpu), totalBytes(stageMeasurements)
+					)
+				);
+
+				first = false;
+			}
+
+			writer.write("},\"measurements\":[");
+			first = true;
+
+			for (var measurement: all) {
+				writer.write(
+					String.format(
+						Locale.ROOT, "%s{\"page\":%s,\"stage\":%s,\"wallMs\":%.3f,\"cpuMs\":%s,\"bytes\":%d}",
+						first ? "" : ",",
+						measurement.page >= 0 ? Integer.toString(measurement.page + 1) : "null",
+						Json.quote(measurement.stage.toString()), millis(measurement.wallNanos),
+						measurement.cpuNanos >= 0 ? String.format(Locale.ROOT, "%.3f", millis(measurement.cpuNanos)) : "null",
+						measurement.bytes
+					)
+				);
+
+				first = false;
+			}
+
+			writer.write("]}\n");
+		}
+	}
+
+	public void writeCsv(File file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("page,stage,wall_ms,cpu_ms,bytes\n");
+
+			for (var measurement: measurements) {
+				writer.write(
+					String.format(
+						Locale.ROOT, "%s,%s,%.3f,%s,%d\n",
+						measurement.page >= 0 ? Integer.toString(measurement.page + 1) : "",
+						measurement.stage, millis(measurement.wallNanos),
+						measurement.cpuNanos >= 0 ? String.format(Locale.ROOT, "%.3f", millis(measurement.cpuNanos)) : "",
+						measurement.bytes
+					)
+				);
+			}
+		}
+	}
+
+	private static long currentThreadCpuTime() {
+		try {
+			return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+		}
+		catch (UnsupportedOperationException uoe) {
+			return -1;
+		}
+	}
+
+	private static List<Measurement> measurementsOf(List<Measurement> all, Stage stage) {
+		return all.stream().filter(measurement -> measurement.stage == stage).collect(Collectors.toList());
+	}
+
+	/**
+	 * The wall-clock (or the known CPU) times in increasing order.
+	 */
+	private static long[] sorted(List<Measurement> stageMeasurements, boolean cpu) {
+		return stageMeasurements.stream()
+			.mapToLong(measurement -> cpu ? measurement.cpuNanos : measurement.wallNanos)
+			.filter(nanos -> nanos >= 0)
+			.sorted()
+			.toArray();
+	}
+
+	/**
+	 * The wall-clock time of the pages: {page, nanoseconds}.
+	 */
+	private static List<long[]> pageTimes(List<Measurement> all) {
+		return all.stream()
+			.filter(measurement -> measurement.page >= 0)
+			.collect(Collectors.groupingBy(measurement -> measurement.page, Collectors.summingLong(measurement -> measurement.wallNanos)))
+			.entrySet().stream()
+			.map(entry -> new long[] {entry.getKey(), entry.getValue()})
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * The nearest-rank percentile of sorted values (0 if there are none).
+	 */
+	private static long percentile(long[] sortedValues, int percent) {
+		if (sortedValues.length == 0)
+			return 0;
+
+		int rank = (int) Math.ceil(percent / 100.0 * sortedValues.length);
+
+		return sortedValues[Math.max(0, rank - 1)];
+	}
+
+	private static String percentilesJson(long[] sortedValues) {
+		if (sortedValues.length == 0)
+			return "null";
+
+		return String.format(
+			Locale.ROOT, "{\"total\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+			millis(sum(sortedValues)), millis(percentile(sortedValues, 50)), millis(percentile(sortedValues, 90)),
+			millis(percentile(sortedValues, 99)), millis(sortedValues[sortedValues.length - 1])
+		);
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+
+		for (long value: values)
+			sum += value;
+
+		return sum;
+	}
+
+	private static long totalBytes(List<Measurement> stageMeasurements) {
+		return stageMeasurements.stream().mapToLong(measurement -> measurement.bytes).sum();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static double megabytes(long bytes) {
+		return bytes / (1024.0 * 1024.0);
+	}
+}
@@ -0,0 +1,42 @@
+package com.h119.transcript;
+
+import javafx.concurrent.Task;
+
+/**
+ * A JavaFX task that reports its log messages and progress through a
+ * UiEventBus, which shows them on the user interface at a fixed rate.
+ */
+abstract class ProcessTask extends Task<Void> implements ProcessListener {
+
+	protected final UiEventBus events;
+
+	protected ProcessTask(UiEventBus events) {
+		this.events = events;
+	}
+
+	@Override
+	public void log(String message) {
+		events.log(message);
+	}
+
+	@Override
+	public void progress(long workDone, long max) {
+		events.progress(workDone, max);
+	}
+
+	/**
+	 * Logs the error that stopped the process, or that the process has been
+	 * cancelled if the error comes from cancelling it (Task.cancel()
+	 * interrupts the thread of the task, e.g. while it waits for the pages).
+	 */
+	protected void logFailure(Throwable e) {
+		if (isCancelled() || e instanceof InterruptedException) {
+			log("Cancelled");
+			progress(0, 1000);
+			return;
+		}
+
+		log(String.format("Error: %s", e));
+		e.printStackTrace();
+	}
+}
@@ -0,0 +1,246 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The settings of processing a document.
+ */
+class ProcessingOptions {
+
+	/**
+	 * The number of cores per render worker by default. Rendering a page
+	 * takes about a quarter of the time of its OCR, so one render worker
+	 * keeps the OCR of four cores busy when the two overlap.
+	 */
+	private static final int CORES_PER_RENDER_WORKER = 4;
+
+	private int renderWorkers;
+	private int ocrWorkers;
+	private boolean keepImages;
+	private RenderMode renderMode;
+	private int minDpi;
+	private int maxDpi;
+	private boolean useTextLayer;
+	private File outputDirectory;
+	private boolean useOcrCache;
+	private boolean streamWordExport;
+	private boolean detectOrientation;
+	private LoadMode loadMode;
+	private long loadThresholdBytes;
+	private PageSelection pageSelection;
+	private boolean saveMetrics;
+
+	/**
+	 * By default as many pages are recognized at a time as the cores allow
+	 * given the threads of an engine (one per core unless OMP_THREAD_LIMIT
+	 * says otherwise, see TesseractPool.threadsPerEngine()), and a quarter
+	 * of the cores render pages (see CORES_PER_RENDER_WORKER).
+	 */
+	public ProcessingOptions() {
+		renderWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / CORES_PER_RENDER_WORKER);
+		ocrWorkers = TesseractPool.pageWorkers(TesseractPool.threadsPerEngine());
+		keepImages = false;
+		renderMode = RenderMode.AUTO;
+		minDpi = 200;
+		maxDpi = 400;
+		useTextLayer = true;
+		outputDirectory = null;
+		useOcrCache = true;
+		streamWordExport = true;
+		detectOrientation = true;
+		loadMode = LoadMode.AUTO;
+		loadThresholdBytes = LoadMode.DEFAULT_THRESHOLD_BYTES;
+		pageSelection = PageSelection.ALL;
+		saveMetrics = false;
+	}
+
+	public int getRenderWorkers() {
+		return renderWorkers;
+	}
+
+	public void setRenderWorkers(int renderWorkers) {
+		this.renderWorkers = Math.max(1, renderWorkers);
+	}
+
+	public int getOcrWorkers() {
+		return ocrWorkers;
+	}
+
+	public void setOcrWorkers(int ocrWorkers) {
+		this.ocrWorkers = Math.max(1, ocrWorkers);
+	}
+
+	/**
+	 * Whether the pages are saved as PNG images even if it's not needed for
+	 * the OCR.
+	 */
+	public boolean isKeepImages() {
+		return keepImages;
+	}
+
+	public void setKeepImages(boolean keepImages) {
+		this.keepImages = keepImages;
+	}
+
+	public RenderMode getRenderMode() {
+		return renderMode;
+	}
+
+	public void setRenderMode(RenderMode renderMode) {
+		this.renderMode = renderMode;
+	}
+
+	/**
+	 * Scanned pages are rendered at the resolution of the scan, but at least
+	 * at this resolution (see ResolutionPlanner).
+	 */
+	public int getMinDpi() {
+		return minDpi;
+	}
+
+	public void setMinDpi(int minDpi) {
+		this.minDpi = Math.max(1, minDpi);
+	}
+
+	/**
+	 * Scanned pages are rendered at the resolution of the scan, but at most
+	 * at this resolution (see ResolutionPlanner).
+	 */
+	public int getMaxDpi() {
+		return maxDpi;
+	}
+
+	public void setMaxDpi(int maxDpi) {
+		this.maxDpi = Math.max(1, maxDpi);
+	}
+
+	/**
+	 * Whether the text of the pages that already have a text layer is
+	 * extracted instead of rendering and recognizing them.
+	 */
+	public boolean isUseTextLayer() {
+		return useTextLayer;
+	}
+
+	public void setUseTextLayer(boolean useTextLayer) {
+		this.useTextLayer = useTextLayer;
+	}
+
+	/**
+	 * The directory of the Word document and the page images, or null if
+	 * they are saved next to the PDF file.
+	 */
+	public File getOutputDirectory() {
+		return outputDirectory;
+	}
+
+	public void setOutputDirectory(File outputDirectory) {
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Whether the recognized texts are stored in (and taken from) the OCR
+	 * cache (see OcrCache).
+	 */
+	public boolean isUseOcrCache() {
+		return useOcrCache;
+	}
+
+	public void setUseOcrCache(boolean useOcrCache) {
+		this.useOcrCache = useOcrCache;
+	}
+
+	/**
+	 * The OCR cache to use or null if it's not used.
+	 */
+	public OcrCache getOcrCache() {
+		return useOcrCache ? OcrCache.getDefault() : null;
+	}
+
+	/**
+	 * Whether the Word document is written page by page while the pages are
+	 * processed (see StreamingWordExport) instead of being built with docx4j
+	 * at the end (see WordExport).
+	 */
+	public boolean isStreamWordExport() {
+		return streamWordExport;
+	}
+
+	public void setStreamWordExport(boolean streamWordExport) {
+		this.streamWordExport = streamWordExport;
+	}
+
+	/**
+	 * Whether the orientation of the pages is detected, so that sideways and
+	 * upside-down pages are turned upright before OCR (see
+	 * OrientationDetector).
+	 */
+	public boolean isDetectOrientation() {
+		return detectOrientation;
+	}
+
+	public void setDetectOrientation(boolean detectOrientation) {
+		this.detectOrientation = detectOrientation;
+	}
+
+	/**
+	 * Where the loaded documents are kept (see LoadMode).
+	 */
+	public LoadMode getLoadMode() {
+		return loadMode;
+	}
+
+	public void setLoadMode(LoadMode loadMode) {
+		this.loadMode = loadMode;
+	}
+
+	/**
+	 * In automatic load mode the larger files use temporary files, and in
+	 * mixed mode this much of a document is kept in main memory.
+	 */
+	public long getLoadThresholdBytes() {
+		return loadThresholdBytes;
+	}
+
+	public void setLoadThresholdBytes(long loadThresholdBytes) {
+		this.loadThresholdBytes = Math.max(1, loadThresholdBytes);
+	}
+
+	/**
+	 * The pages to process (every page by default).
+	 */
+	public PageSelection getPageSelection() {
+		return pageSelection;
+	}
+
+	public void setPageSelection(PageSelection pageSelection) {
+		this.pageSelection = pageSelection;
+	}
+
+	/**
+	 * Whether the timing of the stages of every page is saved next to the
+	 * Word document (see ProcessMetrics); its summary is logged anyway.
+	 */
+	public boolean isSaveMetrics() {
+		return saveMetrics;
+	}
+
+	public void setSaveMetrics(boolean saveMetrics) {
+		this.saveMetrics = saveMetrics;
+	}
+
+	/**
+	 * The path of the output files of a document without the extension:
+	 * the name of the PDF file in the output directory.
+	 */
+	public String getOutputBase(File pdfFile) throws IOException {
+		String pdfFilePath = pdfFile.getCanonicalPath();
+		String fileNoExtension = pdfFilePath.substring(0, pdfFilePath.lastIndexOf("."));
+
+		if (outputDirectory == null)
+			return fileNoExtension;
+
+		return new File(outputDirectory, new File(fileNoExtension).getName()).getCanonicalPath();
+	}
+}
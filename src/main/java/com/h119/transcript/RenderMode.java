@@ -0,0 +1,59 @@
+package com.h119.transcript;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
+
+/**
+ * The colors pages are rendered with.
+ *
+ * Tesseract converts every image to grayscale before recognizing it, so a
+ * color rendering only costs memory (3 bytes per pixel instead of 1, or
+ * 1 bit for black and white) unless the images are kept for other purposes.
+ */
+enum RenderMode {
+	AUTO("Automatic"),
+	GRAY("Grayscale"),
+	BINARY("Black and white"),
+	RGB("Color");
+
+	private final String displayName;
+
+	RenderMode(String displayName) {
+		this.displayName = displayName;
+	}
+
+	/**
+	 * In automatic mode the pages that consist of black and white images only
+	 * (bitonal scans) are rendered as black and white images, everything else
+	 * (color or grayscale scans, born-digital pages) in grayscale.
+	 */
+	public ImageType getImageType(PDPage page) {
+		switch (this) {
+			case GRAY: return ImageType.GRAY;
+			case BINARY: return ImageType.BINARY;
+			case RGB: return ImageType.RGB;
+			default: return detectImageType(page);
+		}
+	}
+
+	private static ImageType detectImageType(PDPage page) {
+		try {
+			var images = PageInspector.findImages(page);
+
+			if (!images.isEmpty() && images.stream().allMatch(PageInspector::isBitonal))
+				return ImageType.BINARY;
+		}
+		catch (IOException ioe) {
+			// A broken image will show up when rendering, grayscale is a safe choice until then
+		}
+
+		return ImageType.GRAY;
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+}
@@ -0,0 +1,82 @@
+package com.h119.transcript;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Chooses the resolution a page is rendered with.
+ *
+ * A scanned page is rendered at the resolution it has been scanned with, so
+ * that the pixels of the scan are neither interpolated (which only costs
+ * time and memory) nor thrown away. The resolution is clamped to a range
+ * that is good for the OCR: below about 200 DPI Tesseract misses small
+ * letters and above about 400 DPI it gets slower without getting better.
+ *
+ * The resolution of a scan is the size of its image in pixels over the size
+ * it is drawn with on the page. Pages that are not covered by an image (a
+ * logo or a photo on a born-digital page) are rendered at DEFAULT_DPI.
+ */
+class ResolutionPlanner {
+
+	public static final int DEFAULT_DPI = 300;
+
+	/**
+	 * The largest image of a page is only taken for a scan if it covers at
+	 * least this part of the page (scans are sometimes cropped or have a
+	 * margin around them).
+	 */
+	private static final double MIN_SCAN_COVERAGE = 0.75;
+
+	private static final double SQUARE_POINTS_PER_SQUARE_INCH = 72.0 * 72.0;
+
+	private final int minDpi;
+	private final int maxDpi;
+
+	public ResolutionPlanner(int minDpi, int maxDpi) {
+		this.minDpi = minDpi;
+		this.maxDpi = Math.max(minDpi, maxDpi);
+	}
+
+	/**
+	 * The resolution the largest image of the page is drawn with if it
+	 * covers most of the page (as scans do), or DEFAULT_DPI otherwise;
+	 * clamped to the configured range either way.
+	 */
+	public int planDpi(PDPage page) {
+		return clamp(detectDpi(page));
+	}
+
+	private int clamp(int dpi) {
+		return Math.max(minDpi, Math.min(maxDpi, dpi));
+	}
+
+	private static int detectDpi(PDPage page) {
+		PDRectangle pageBox = page.getCropBox();
+		double pageArea = (double) pageBox.getWidth() * pageBox.getHeight();
+
+		if (pageArea <= 0)
+			return DEFAULT_DPI;
+
+		try {
+			PageInspector.DrawnImage largest = null;
+
+			for (PageInspector.DrawnImage image: PageInspector.findDrawnImages(page)) {
+				if (largest == null || image.visibleArea > largest.visibleArea)
+					largest = image;
+			}
+
+			if (largest == null || largest.area <= 0 || largest.visibleArea < pageArea * MIN_SCAN_COVERAGE)
+				return DEFAULT_DPI;
+
+			// The areas are used so that it doesn't matter if the image is rotated on the page
+			double squareInches = largest.area / SQUARE_POINTS_PER_SQUARE_INCH;
+
+			return (int) Math.round(Math.sqrt((double) largest.width * largest.height / squareInches));
+		}
+		catch (IOException ioe) {
+			return DEFAULT_DPI;
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package com.h119.transcript;
 
+import java.util.Arrays;
+
 public class Starter {
 	public static void main(String[] args) {
+		// The command line mode must not touch any JavaFX class
+		if (args.length > 0 && args[0].equals("--cli"))
+			System.exit(Cli.run(Arrays.copyOfRange(args, 1, args.length)));
+
 		Transcript.bootstrap(args);
 	}
 }
-
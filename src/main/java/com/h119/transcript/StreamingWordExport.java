@@ -0,0 +1,239 @@
+package com.h119.transcript;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a Word document page by page as the texts of the pages are ready,
+ * instead of building the whole document in memory first (see WordExport).
+ *
+ * The document is written directly into the zip file (the minimal package
+ * of [Content_Types].xml, _rels/.rels and word/document.xml) with one
+ * paragraph per line, like WordExport does. The pages may be added in any
+ * order: a page is written as soon as every page before it has been
+ * written (or skipped), until then it's kept in memory.
+ *
+ * The file is written under a temporary name and only renamed to the name
+ * of the Word document by finish(), so a cancelled or failed process never
+ * leaves a partial document behind.
+ */
+class StreamingWordExport implements AutoCloseable {
+
+	private static final String CONTENT_TYPES =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+		"<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+		"<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+		"<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+		"<Override PartName=\"/word/document.xml\" " +
+		"ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>" +
+		"</Types>";
+
+	private static final String RELATIONSHIPS =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+		"<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+		"<Relationship Id=\"rId1\" " +
+		"Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" " +
+		"Target=\"word/document.xml\"/>" +
+		"</Relationships>";
+
+	private static final String DOCUMENT_START =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+		"<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\">" +
+		"<w:body>";
+
+	/** A4 with 1 inch margins. */
+	private static final String DOCUMENT_END =
+		"<w:sectPr>" +
+		"<w:pgSz w:w=\"11906\" w:h=\"16838\"/>" +
+		"<w:pgMar w:top=\"1440\" w:right=\"1440\" w:bottom=\"1440\" w:left=\"1440\" " +
+		"w:header=\"708\" w:footer=\"708\" w:gutter=\"0\"/>" +
+		"</w:sectPr>" +
+		"</w:body></w:document>";
+
+	private final File exportFile;
+	private final File partFile;
+	private final int pageCount;
+	private final ZipOutputStream zip;
+	private final Writer document;
+
+	/**
+	 * The pages after nextPage that have been added (with their texts) or
+	 * skipped (see skipPage()) already.
+	 */
+	private final Map<Integer, String> waitingPages = new HashMap<>();
+	private final BitSet skippedPages = new BitSet();
+
+	private int nextPage = 0;
+	private boolean finished = false;
+
+	public StreamingWordExport(File exportFile, int pageCount) throws IOException {
+		this.exportFile = exportFile;
+		this.partFile = new File(exportFile.getPath() + ".part");
+		this.pageCount = pageCount;
+
+		OutputStream output = new BufferedOutputStream(Files.newOutputStream(partFile.toPath()));
+		this.zip = new ZipOutputStream(output, StandardCharsets.UTF_8);
+		this.document = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+
+		try {
+			writeEntry("[Content_Types].xml", CONTENT_TYPES);
+			writeEntry("_rels/.rels", RELATIONSHIPS);
+
+			zip.putNextEntry(new ZipEntry("word/document.xml"));
+			document.write(DOCUMENT_START);
+		}
+		catch (IOException ioe) {
+			close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Adds the text of a page (numbered from 0). The page is written right
+	 * away if it's the next one, together with the pages after it that
+	 * have been added already.
+	 */
+	public synchronized void addPage(int page, String text) throws IOException {
+		checkNotAdded(page);
+		waitingPages.put(page, text);
+		writeWaitingPages();
+	}
+
+	/**
+	 * Leaves a page out of the document (e.g. one that is not selected).
+	 */
+	public synchronized void skipPage(int page) throws IOException {
+		checkNotAdded(page);
+		skippedPages.set(page);
+		writeWaitingPages();
+	}
+
+	/**
+	 * Completes the document once every page has been added.
+	 *
+	 * @return the Word file
+	 */
+	public synchronized File finish() throws IOException {
+		if (nextPage < pageCount)
+			throw new IllegalStateException(String.format("Page %d is missing", nextPage + 1));
+
+		var event = new FlightEvents.DocxSave();
+		event.begin();
+
+		document.write(DOCUMENT_END);
+		document.flush();
+		zip.closeEntry();
+		zip.close();
+
+		Files.move(partFile.toPath(), exportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		finished = true;
+
+		if (event.shouldCommit()) {
+			event.pages = pageCount;
+			event.file = exportFile.getPath();
+			event.bytes = exportFile.length();
+			event.commit();
+		}
+
+		return exportFile;
+	}
+
+	/**
+	 * Deletes the partial document unless it has been finished.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (finished)
+			return;
+
+		try {
+			zip.close();
+		}
+		finally {
+			Files.deleteIfExists(partFile.toPath());
+		}
+	}
+
+	private void checkNotAdded(int page) {
+		if (page < nextPage || waitingPages.containsKey(page) || skippedPages.get(page))
+			throw new IllegalArgumentException(String.format("Page %d has been added already", page + 1));
+	}
+
+	/**
+	 * Writes the next pages for as long as they have been added or skipped.
+	 */
+	private void writeWaitingPages() throws IOException {
+		while (true) {
+			if (skippedPages.get(nextPage))
+				skippedPages.clear(nextPage);
+			else if (waitingPages.containsKey(nextPage))
+				writePage(waitingPages.remove(nextPage));
+			else
+				return;
+
+			nextPage += 1;
+		}
+	}
+
+	/**
+	 * One paragraph per line, like WordExport.
+	 */
+	private void writePage(String text) throws IOException {
+		var event = new FlightEvents.DocxBuild();
+		event.begin();
+
+		String[] lines = text.split("\n");
+
+		for (var line: lines) {
+			document.write("<w:p><w:r><w:t xml:space=\"preserve\">");
+			writeEscaped(line);
+			document.write("</w:t></w:r></w:p>");
+		}
+
+		if (event.shouldCommit()) {
+			event.pages = 1;
+			event.paragraphs = lines.length;
+			event.characters = text.length();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Escapes the markup characters and leaves out the characters that
+	 * can't be in an XML document at all.
+	 */
+	private void writeEscaped(String line) throws IOException {
+		for (int i = 0; i < line.length(); ++i) {
+			char c = line.charAt(i);
+
+			switch (c) {
+				case '&': document.write("&amp;"); break;
+				case '<': document.write("&lt;"); break;
+				case '>': document.write("&gt;"); break;
+				default:
+					if (c >= 0x20 || c == '\t') {
+						if (c != 0xfffe && c != 0xffff)
+							document.write(c);
+					}
+			}
+		}
+	}
+
+	private void writeEntry(String name, String content) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(content.getBytes(StandardCharsets.UTF_8));
+		zip.closeEntry();
+	}
+}
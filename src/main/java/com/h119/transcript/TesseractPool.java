@@ -0,0 +1,384 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.leptonica.PIX;
+import org.bytedeco.tesseract.TessBaseAPI;
+import static org.bytedeco.leptonica.global.lept.pixDestroy;
+import static org.bytedeco.leptonica.global.lept.pixGetHeight;
+import static org.bytedeco.leptonica.global.lept.pixGetWidth;
+import static org.bytedeco.leptonica.global.lept.pixGetXRes;
+import static org.bytedeco.leptonica.global.lept.pixRead;
+import static org.bytedeco.leptonica.global.lept.pixRotateOrth;
+
+/**
+ * A fixed number of Tesseract engines initialized for the same language.
+ * The engines are taken from the EngineCache and given back to it by
+ * close(), so the next pool of the language doesn't initialize them again.
+ *
+ * TessBaseAPI is not thread-safe, so a worker borrows an engine with
+ * acquire(), uses it exclusively and gives it back with release().
+ *
+ * If the pool has an OcrCache, the pages that have been recognized before
+ * with the same language data are taken from the cache.
+ */
+class TesseractPool implements AutoCloseable {
+
+	/**
+	 * Overrides the number of OpenMP threads a single engine is assumed to
+	 * use when planning the number of page workers.
+	 */
+	public static final String THREADS_PER_ENGINE_PROPERTY = "transcript.ocr.threadsPerEngine";
+
+	/** The threads of an engine if the number is not given (see threadsPerEngine()). */
+	private static final int DEFAULT_THREADS_PER_ENGINE = 1;
+
+	private final String languageCode;
+	private final List<TessBaseAPI> engines;
+	private final BlockingQueue<TessBaseAPI> idleEngines;
+	private final EngineCache engineCache;
+	private final int warmEngines;
+	private final Executor executor;
+	private OcrCache cache;
+	private String engineSettings;
+
+	public TesseractPool(String languageCode, int size) {
+		this(languageCode, size, EngineCache.getDefault());
+	}
+
+	public TesseractPool(String languageCode, int size, EngineCache engineCache) {
+		this.languageCode = languageCode;
+		this.engines = new ArrayList<>(size);
+		this.idleEngines = new ArrayBlockingQueue<>(size);
+		this.engineCache = engineCache;
+		this.warmEngines = Math.min(size, engineCache.idleCount(languageCode));
+		this.executor = JobScheduler.limit(JobScheduler.getDefault().cpu(), size);
+
+		try {
+			for (int i = 0; i < size; ++i) {
+				TessBaseAPI api = engineCache.take(languageCode);
+
+				engines.add(api);
+				idleEngines.add(api);
+			}
+		}
+		catch (RuntimeException re) {
+			close();
+			throw re;
+		}
+	}
+
+	public String getLanguageCode() {
+		return languageCode;
+	}
+
+	public int size() {
+		return engines.size();
+	}
+
+	/**
+	 * Runs tasks on the CPU executor of the JobScheduler, at most as many at
+	 * the same time as the pool has engines. If every task that uses the
+	 * pool runs on it (even the tasks of several documents sharing the
+	 * pool), acquire() never blocks a thread of the shared CPU pool.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * The number of engines that had been initialized already (by a previous
+	 * pool or by EngineCache.warmUp()) when the pool was created.
+	 */
+	public int getWarmEngines() {
+		return warmEngines;
+	}
+
+	/**
+	 * Sets the cache the recognized texts are stored in and taken from
+	 * (null to always perform OCR).
+	 */
+	public void setCache(OcrCache cache) {
+		this.cache = cache;
+		this.engineSettings = cache != null ? engineSettings(languageCode) : null;
+	}
+
+	public TessBaseAPI acquire() throws InterruptedException {
+		return idleEngines.take();
+	}
+
+	public void release(TessBaseAPI api) {
+		api.Clear();
+		idleEngines.add(api);
+	}
+
+	/**
+	 * Performs OCR on an image file with one of the engines of the pool.
+	 */
+	public String recognize(String imageFile) throws InterruptedException {
+		return recognize(imageFile, 0);
+	}
+
+	/**
+	 * Performs OCR on an image file turned clockwise by rotation degrees (a
+	 * multiple of 90). The pixels are only moved in memory, the file is not
+	 * changed.
+	 */
+	public String recognize(String imageFile, int rotation) throws InterruptedException {
+		return recognize(imageFile, rotation, null, -1);
+	}
+
+	/**
+	 * Same as recognize(imageFile, rotation), reading the image and the OCR
+	 * of the page are recorded in metrics (unless it's null).
+	 */
+	public String recognize(
+		String imageFile, int rotation, ProcessMetrics metrics, int page
+	) throws InterruptedException {
+		int quadrants = Math.floorMod(rotation, 360) / 90;
+		String key = null;
+
+		if (cache != null) {
+			try {
+				key = cache.key(String.format("%s|%d", engineSettings, quadrants * 90), Paths.get(imageFile));
+			}
+			catch (IOException ioe) {
+				throw new RuntimeException(String.format("Could not read image: %s", imageFile), ioe);
+			}
+
+			String text = cache.get(key);
+
+			if (text != null)
+				return text;
+		}
+
+		PIX image = metrics != null
+			? metrics.record(page, ProcessMetrics.Stage.READ_IMAGE, () -> readImage(imageFile, quadrants, page))
+			: readImage(imageFile, quadrants, page);
+
+		TessBaseAPI api = null;
+
+		try {
+			api = acquire();
+
+			TessBaseAPI engine = api;
+			String text = metrics != null
+				? metrics.record(page, ProcessMetrics.Stage.OCR, () -> recognizeImage(engine, image, page))
+				: recognizeImage(engine, image, page);
+
+			if (key != null)
+				cache.put(key, text);
+
+			return text;
+		}
+		finally {
+			if (api != null)
+				release(api);
+
+			pixDestroy(image);
+		}
+	}
+
+	/**
+	 * Reads an image file turned clockwise by quadrants * 90 degrees.
+	 */
+	private static PIX readImage(String imageFile, int quadrants, int page) {
+		var decodeEvent = new FlightEvents.ImageDecode();
+		decodeEvent.begin();
+
+		PIX image = pixRead(imageFile);
+		if (image == null)
+			throw new RuntimeException(String.format("Could not read image: %s", imageFile));
+
+		if (decodeEvent.shouldCommit()) {
+			decodeEvent.page = page + 1;
+			decodeEvent.width = pixGetWidth(image);
+			decodeEvent.height = pixGetHeight(image);
+			decodeEvent.file = imageFile;
+			decodeEvent.bytes = new File(imageFile).length();
+			decodeEvent.commit();
+		}
+
+		if (quadrants == 0)
+			return image;
+
+		PIX rotatedImage = pixRotateOrth(image, quadrants);
+		pixDestroy(image);
+
+		if (rotatedImage == null)
+			throw new RuntimeException(String.format("Could not rotate image: %s", imageFile));
+
+		return rotatedImage;
+	}
+
+	private String recognizeImage(TessBaseAPI api, PIX image, int page) {
+		var ocrEvent = new FlightEvents.Ocr();
+		ocrEvent.begin();
+
+		api.SetImage(image);
+		String text = getText(api);
+
+		if (ocrEvent.shouldCommit()) {
+			ocrEvent.page = page + 1;
+			ocrEvent.dpi = pixGetXRes(image);
+			ocrEvent.language = languageCode;
+			ocrEvent.width = pixGetWidth(image);
+			ocrEvent.height = pixGetHeight(image);
+			ocrEvent.characters = text.length();
+			ocrEvent.commit();
+		}
+
+		return text;
+	}
+
+	/**
+	 * Performs OCR on a rendered page with one of the engines of the pool.
+	 * The pixels are passed to Tesseract directly, without an image file.
+	 */
+	public String recognize(PageRaster raster) throws InterruptedException {
+		return recognize(raster, -1);
+	}
+
+	/**
+	 * Same as recognize(raster), the page (numbered from 0) is only used
+	 * for the flight recorder events (see FlightEvents).
+	 */
+	public String recognize(PageRaster raster, int page) throws InterruptedException {
+		String key = null;
+
+		if (cache != null) {
+			key = cache.key(engineSettings, raster);
+
+			String text = cache.get(key);
+
+			if (text != null)
+				return text;
+		}
+
+		TessBaseAPI api = acquire();
+
+		try {
+			var event = new FlightEvents.Ocr();
+			event.begin();
+
+			api.SetImage(
+				raster.getData(), raster.getWidth(), raster.getHeight(),
+				raster.getBytesPerPixel(), raster.getBytesPerLine()
+			);
+			// There's no image file to take the resolution from
+			api.SetSourceResolution(raster.getDpi());
+
+			String text = getText(api);
+
+			if (event.shouldCommit()) {
+				event.page = page + 1;
+				event.dpi = raster.getDpi();
+				event.language = languageCode;
+				event.width = raster.getWidth();
+				event.height = raster.getHeight();
+				event.characters = text.length();
+				event.commit();
+			}
+
+			if (key != null)
+				cache.put(key, text);
+
+			return text;
+		}
+		finally {
+			release(api);
+		}
+	}
+
+	/**
+	 * Everything besides the page that the recognized text depends on: the
+	 * language and the version of its training data (its size and time of
+	 * modification, so that updating the training data invalidates the
+	 * cached texts).
+	 */
+	private static String engineSettings(String languageCode) {
+		var settings = new StringBuilder("tesseract 4.1.1|default oem|auto psm");
+
+		for (var language: languageCode.split("\\+")) {
+			Path trainedData = Paths.get("tessdata", language + ".traineddata");
+			settings.append('|').append(language);
+
+			try {
+				settings
+					.append(':').append(Files.size(trainedData))
+					.append(':').append(Files.getLastModifiedTime(trainedData).toMillis());
+			}
+			catch (IOException ioe) {
+				// The engines couldn't have been initialized without it
+			}
+		}
+
+		return settings.toString();
+	}
+
+	private static String getText(TessBaseAPI api) {
+		BytePointer outText = api.GetUTF8Text();
+		String text = new String(outText.getStringBytes(), StandardCharsets.UTF_8);
+		outText.deallocate();
+
+		return text;
+	}
+
+	/**
+	 * Gives the engines back to the EngineCache (none of them may be in use).
+	 */
+	@Override
+	public void close() {
+		for (var api: engines)
+			engineCache.give(languageCode, api);
+
+		engines.clear();
+		idleEngines.clear();
+	}
+
+	/**
+	 * The number of threads Tesseract uses internally for a single page.
+	 *
+	 * When Tesseract is built with OpenMP it uses as many threads as the
+	 * OMP_THREAD_LIMIT environment variable allows. The variable has to be
+	 * set before the JVM starts (the native library reads it when it's
+	 * loaded), so it is only read here to plan the page-level parallelism
+	 * around it. If neither it nor the system property is set, an engine is
+	 * assumed to use DEFAULT_THREADS_PER_ENGINE threads, so that a page is
+	 * recognized per core: the pages scale better than the threads within a
+	 * page.
+	 */
+	public static int threadsPerEngine() {
+		String value = System.getProperty(THREADS_PER_ENGINE_PROPERTY, System.getenv("OMP_THREAD_LIMIT"));
+
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value.trim()));
+			}
+			catch (NumberFormatException nfe) {
+				System.err.format("Invalid number of threads per engine: %s\n", value);
+			}
+		}
+
+		return DEFAULT_THREADS_PER_ENGINE;
+	}
+
+	/**
+	 * The number of pages that can be recognized in parallel without
+	 * oversubscribing the cores, given the threads used by every engine.
+	 */
+	public static int pageWorkers(int threadsPerEngine) {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, threadsPerEngine));
+	}
+}
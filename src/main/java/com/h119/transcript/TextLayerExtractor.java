@@ -0,0 +1,127 @@
+package com.h119.transcript;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * Extracts the text of the pages that already have a text layer (born-digital
+ * pages or pages that have been OCR'd before), so that they don't have to be
+ * rendered and recognized.
+ *
+ * A scanned page can have a text layer that only holds a digital header or
+ * footer (a stamp added by the archive, a page number) above the image of
+ * the page. So on a page mostly covered by images the text layer is only
+ * used if it has about as much text as a page of that size has.
+ *
+ * PDFTextStripper is not thread-safe, every worker needs its own extractor.
+ */
+class TextLayerExtractor {
+
+	/**
+	 * Pages with less text than this (e.g. a page number or a stamp on a
+	 * scanned page) are recognized anyway.
+	 */
+	private static final int MIN_CHARACTERS = 32;
+
+	/**
+	 * The text layer is not used if more than this part of its characters
+	 * can't be read (fonts without a usable encoding produce control
+	 * characters and replacement characters).
+	 */
+	private static final double MAX_UNREADABLE_RATIO = 0.1;
+
+	/**
+	 * A page is taken for a scan if its images cover more than this part of
+	 * it.
+	 */
+	private static final double SCANNED_IMAGE_COVERAGE = 0.5;
+
+	/**
+	 * The text a text layer needs on every square inch covered by images (a
+	 * page of text has 20-30 characters per square inch, its header and
+	 * footer less than 2).
+	 */
+	private static final double MIN_CHARACTERS_PER_SQUARE_INCH = 5;
+
+	private static final double SQUARE_POINTS_PER_SQUARE_INCH = 72.0 * 72.0;
+
+	private final PDFTextStripper stripper;
+
+	public TextLayerExtractor() throws IOException {
+		stripper = new PDFTextStripper();
+		stripper.setSortByPosition(true);
+		stripper.setLineSeparator("\n");
+	}
+
+	/**
+	 * @return the text of the page (numbered from 0) or null if it doesn't
+	 *         have a usable text layer
+	 */
+	public String extract(PDDocument document, int page) throws IOException {
+		stripper.setStartPage(page + 1);
+		stripper.setEndPage(page + 1);
+
+		String text = stripper.getText(document);
+
+		if (!isUsable(text))
+			return null;
+
+		PDPage pdPage = document.getPage(page);
+		PDRectangle pageBox = pdPage.getCropBox();
+		double pageArea = (double) pageBox.getWidth() * pageBox.getHeight();
+
+		return coversImages(text, imageArea(pdPage, pageArea), pageArea) ? text : null;
+	}
+
+	/**
+	 * Adds up the area of the images drawn on a page (clipped to the page,
+	 * images drawn over each other are counted more than once, at most the
+	 * area of the page is returned).
+	 */
+	private static double imageArea(PDPage page, double pageArea) throws IOException {
+		double imageArea = 0;
+
+		for (PageInspector.DrawnImage image: PageInspector.findDrawnImages(page))
+			imageArea += image.visibleArea;
+
+		return Math.min(imageArea, pageArea);
+	}
+
+	static boolean isUsable(String text) {
+		int characters = 0;
+		int unreadable = 0;
+
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+
+			if (Character.isWhitespace(c))
+				continue;
+
+			characters += 1;
+
+			if (c == '\uFFFD' || Character.isISOControl(c) || Character.getType(c) == Character.PRIVATE_USE)
+				unreadable += 1;
+		}
+
+		return characters >= MIN_CHARACTERS && unreadable <= characters * MAX_UNREADABLE_RATIO;
+	}
+
+	/**
+	 * @param imageArea the area of the page covered by images (in square
+	 *        points, see imageArea(PDPage, double))
+	 * @return false if the page is mostly covered by images and the text
+	 *         doesn't cover them too (a scan with a digital header or footer)
+	 */
+	static boolean coversImages(String text, double imageArea, double pageArea) {
+		if (imageArea <= pageArea * SCANNED_IMAGE_COVERAGE)
+			return true;
+
+		long characters = text.codePoints().filter(c -> !Character.isWhitespace(c)).count();
+
+		return characters >= imageArea / SQUARE_POINTS_PER_SQUARE_INCH * MIN_CHARACTERS_PER_SQUARE_INCH;
+	}
+}
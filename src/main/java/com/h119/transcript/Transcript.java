@@ -14,6 +14,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -39,6 +40,7 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
@@ -59,10 +61,18 @@ public class Transcript extends Application {
 	private ComboBox<Language> languageBox;
 	private Button openFileButton;
 	private TextArea textArea;
+	private LogView logView;
+	private UiEventBus events;
 	private ProgressBar progressBar;
 	private Button cancelButton;
 	private Button themeButton;
 	private CheckBox showImageProcessingWindow;
+	private CheckBox keepImages;
+	private CheckBox useTextLayer;
+	private CheckBox useOcrCache;
+	private CheckBox detectOrientation;
+	private ComboBox<RenderMode> renderModeBox;
+	private TextField pageSelectionField;
 
 	public enum ThemeState {LIGHT, DARK};
 
@@ -77,6 +87,12 @@ public class Transcript extends Application {
 
 	private static final int MARGIN = 10;
 
+	/**
+	 * The training data in tessdata that is not a language: orientation
+	 * and script detection, and math equations.
+	 */
+	private static final Set<String> NON_LANGUAGE_DATA = Set.of(OrientationDetector.OSD_LANGUAGE, "equ");
+
 	public void start(final Stage stage) throws Exception {
 		mainStage = stage;
 
@@ -86,6 +102,12 @@ public class Transcript extends Application {
 		languageBox.getItems().addAll(getTrainedLanguages());
 		languageBox.setValue(languageBox.getItems().get(0));
 
+		// The engines of the selected language are ready by the time a document is opened
+		warmUpEngines(languageBox.getValue());
+		languageBox.valueProperty().addListener(
+			(observableLanguage, oldLanguage, newLanguage) -> warmUpEngines(newLanguage)
+		);
+
 		openFileButton = new Button("Open PDF file");
 
 		textArea = new TextArea();
@@ -106,8 +128,11 @@ public class Transcript extends Application {
 		});
 		/* -- END OF WORKAROUND CODE SNIPPET -- */
 
+		logView = new LogView(textArea);
+		events = new UiEventBus(logView);
+
 		progressBar = new ProgressBar();
-		progressBar.setProgress(0);
+		progressBar.progressProperty().bind(events.progressProperty());
 
 		openFileButton.setOnAction(this::openFilePressed);
 
@@ -118,6 +143,51 @@ public class Transcript extends Application {
 		showImageProcessingWindow = new CheckBox("Show image processing window");
 		showImageProcessingWindow.setSelected(true);
 
+		keepImages = new CheckBox("Keep page images");
+		keepImages.setSelected(false);
+		keepImages.setTooltip(
+			new Tooltip("Save the pages as PNG images even if they don't need to be reviewed")
+		);
+
+		useTextLayer = new CheckBox("Use text layer");
+		useTextLayer.setSelected(true);
+		useTextLayer.setTooltip(
+			new Tooltip("Extract the text of the pages that already have text instead of recognizing them")
+		);
+
+		detectOrientation = new CheckBox("Detect orientation");
+		detectOrientation.setSelected(true);
+		detectOrientation.setTooltip(
+			new Tooltip(
+				"Turn sideways and upside-down pages upright; only the pages whose orientation is " +
+				"uncertain are shown in the image processing window"
+			)
+		);
+
+		useOcrCache = new CheckBox("Use OCR cache");
+		useOcrCache.setSelected(true);
+		useOcrCache.setTooltip(
+			new Tooltip("Reuse the text of the pages that have been recognized before")
+		);
+
+		final var renderModeLabel = new Label("Colors:");
+
+		renderModeBox = new ComboBox<>();
+		renderModeBox.getItems().addAll(RenderMode.values());
+		renderModeBox.setValue(RenderMode.AUTO);
+		renderModeBox.setTooltip(
+			new Tooltip("The colors the pages are rendered with (the OCR only needs grayscale)")
+		);
+
+		final var pageSelectionLabel = new Label("Pages:");
+
+		pageSelectionField = new TextField();
+		pageSelectionField.setPromptText("all");
+		pageSelectionField.setPrefColumnCount(10);
+		pageSelectionField.setTooltip(
+			new Tooltip("The pages to process, e.g. 1-20,45,100- (every page if empty)")
+		);
+
 		lightThemeIcon = new ImageView("/lightTheme.png");
 		darkThemeIcon = new ImageView("/darkTheme.png");
 
@@ -133,7 +203,6 @@ public class Transcript extends Application {
 			languageBox,
 			openFileButton,
 			cancelButton,
-			showImageProcessingWindow,
 			spacer,
 			themeButton
 		);
@@ -141,8 +210,24 @@ public class Transcript extends Application {
 		controlBox.setSpacing(MARGIN);
 		controlBox.setAlignment(Pos.CENTER_LEFT);
 
+		final var optionBox = new HBox(
+			showImageProcessingWindow,
+			keepImages,
+			useTextLayer,
+			useOcrCache,
+			detectOrientation,
+			renderModeLabel,
+			renderModeBox,
+			pageSelectionLabel,
+			pageSelectionField
+		);
+
+		optionBox.setSpacing(MARGIN);
+		optionBox.setAlignment(Pos.CENTER_LEFT);
+
 		final var layout = new VBox(
 			controlBox,
+			optionBox,
 			textArea,
 			progressBar
 		);
@@ -153,6 +238,7 @@ public class Transcript extends Application {
 		HBox.setHgrow(spacer, Priority.ALWAYS);
 
 		VBox.setVgrow(controlBox, Priority.NEVER);
+		VBox.setVgrow(optionBox, Priority.NEVER);
 		VBox.setVgrow(textArea, Priority.ALWAYS);
 		VBox.setVgrow(progressBar, Priority.NEVER);
 
@@ -167,75 +253,138 @@ public class Transcript extends Application {
 		stage.show();
 	}
 
+	public void stop() {
+		if (events != null)
+			events.close();
+	}
+
 	private void openFilePressed(ActionEvent event) {
 		try {
+			// Checked before choosing the file, so that a mistake doesn't need choosing it again
+			var pageSelection = PageSelection.parse(pageSelectionField.getText());
 			var pdfFile = getFile(mainStage);
 			var documentLanguage = languageBox.getValue();
 
-			textArea.setText(
+			events.flush();
+			logView.clear();
+			events.progress(0, 1000);
+			events.log(
 				String.format(
-					"The selected document language is: %s\nOpening PDF file: %s\n",
+					"The selected document language is: %s\nOpening PDF file: %s",
 					documentLanguage.getName(),
 					pdfFile.getCanonicalPath()
 				)
 			);
 
-			var imageFiles = new ArrayList<String>();
-
-			currentTask = new ImageCreationProcess(pdfFile, imageFiles, textArea);
-
 			cancelButton.setDisable(false);
 			openFileButton.setDisable(true);
 
-			progressBar.progressProperty().bind(currentTask.progressProperty());
+			/*
+			 * The pages can only be reviewed once all of them have been
+			 * rendered, otherwise the rendering and the OCR can overlap.
+			 */
+			if (showImageProcessingWindow.isSelected())
+				startImageCreation(pdfFile, documentLanguage, pageSelection);
+			else
+				startPipeline(pdfFile, documentLanguage, pageSelection);
+		}
+		catch (FileOperationCancelledException foce) {
+			events.log(foce.getMessage());
+		}
+		catch (IllegalArgumentException iae) {
+			// An invalid page selection
+			events.log(iae.getMessage());
+		}
+		catch (Exception exception) {
+			events.log(String.format("Error: %s", exception));
+		}
+	}
 
-			currentTask.messageProperty().addListener(
-				(observableValue, oldValue, newValue) -> {
-					textArea.appendText(newValue + "\n");
-				}
-			);
+	private void startImageCreation(File pdfFile, Language documentLanguage, PageSelection pageSelection) {
+		var pages = new DocumentPages();
+		var options = getProcessingOptions(pageSelection);
 
-			currentTask.stateProperty().addListener(
-				(observableValue, oldValue, newValue) -> {
-					if (newValue == Worker.State.SUCCEEDED) {
-						if (imageFiles.size() > 0 && showImageProcessingWindow.isSelected()) {
-							final var processingWindow = new ImageProcessingWindow(themeState, imageFiles);
-							processingWindow.showAndWait();
-						}
+		// Nothing else runs while the pages are being rendered
+		options.setRenderWorkers(Runtime.getRuntime().availableProcessors());
 
-						progressBar.progressProperty().unbind();
+		// Shared by both processes, the OcrProcess reports it
+		var metrics = new ProcessMetrics(pdfFile);
+		var imageCreation = new ImageCreationProcess(pdfFile, pages, events, options, metrics);
 
-						currentTask = new OcrProcess(pdfFile, documentLanguage, imageFiles, textArea, openFileButton, cancelButton);
+		imageCreation.stateProperty().addListener(
+			(observableValue, oldValue, newValue) -> {
+				if (newValue == Worker.State.SUCCEEDED) {
+					// Only the pages whose orientation is uncertain if it has been detected
+					var reviewPages = new ArrayList<Integer>();
 
-						progressBar.progressProperty().bind(currentTask.progressProperty());
+					for (var page: pages.getPagesToReview()) {
+						if (pages.getImageFile(page) != null)
+							reviewPages.add(page);
+					}
 
-						currentTask.messageProperty().addListener(
-							(observableMessage, oldMessage, newMessage) -> {
-								textArea.appendText(newMessage + "\n");
-							}
-						);
+					if (reviewPages.isEmpty() && !pages.getImageFiles().isEmpty())
+						events.log("The orientation of every page has been detected, no page needs review");
 
-						new Thread(currentTask).start();
+					if (reviewPages.size() > 0) {
+						final var processingWindow = new ImageProcessingWindow(themeState, pages, reviewPages);
+						processingWindow.showAndWait();
 					}
+
+					startTask(
+						new OcrProcess(
+							pdfFile, documentLanguage, pages, events, openFileButton, cancelButton,
+							options, metrics
+						)
+					);
 				}
-			);
+			}
+		);
 
-			new Thread(currentTask).start();
-		}
-		catch (FileOperationCancelledException foce) {
-			textArea.appendText(
-				String.format("%s\n", foce.getMessage())
-			);
-		}
-		catch (Exception exception) {
-			textArea.appendText(
-				String.format("Error: %s\n", exception)
-			);
-		}
+		startTask(imageCreation);
+	}
+
+	private void startPipeline(File pdfFile, Language documentLanguage, PageSelection pageSelection) {
+		startTask(
+			new PipelineProcess(
+				pdfFile, documentLanguage, events, openFileButton, cancelButton,
+				getProcessingOptions(pageSelection)
+			)
+		);
+	}
+
+	private static void warmUpEngines(Language language) {
+		if (language != null)
+			EngineCache.getDefault().warmUp(language.getAlpha3(), new ProcessingOptions().getOcrWorkers());
+	}
+
+	private ProcessingOptions getProcessingOptions(PageSelection pageSelection) {
+		var options = new ProcessingOptions();
+
+		options.setPageSelection(pageSelection);
+		options.setKeepImages(keepImages.isSelected());
+		options.setRenderMode(renderModeBox.getValue());
+		options.setUseTextLayer(useTextLayer.isSelected());
+		options.setUseOcrCache(useOcrCache.isSelected());
+		options.setDetectOrientation(detectOrientation.isSelected());
+
+		return options;
+	}
+
+	private void startTask(Task<Void> task) {
+		currentTask = task;
+
+		currentTask.messageProperty().addListener(
+			(observableMessage, oldMessage, newMessage) -> {
+				events.log(newMessage);
+			}
+		);
+
+		JobScheduler.getDefault().start(currentTask);
 	}
 
 	private void cancelPressed(ActionEvent event) {
 		if (currentTask != null) {
+			// Interrupts the task, which cancels every page it has in flight
 			currentTask.cancel();
 			currentTask = null;
 			cancelButton.setDisable(true);
@@ -295,13 +444,15 @@ public class Transcript extends Application {
 						name ->
 							name.endsWith(".traineddata") && name.indexOf("_") == -1
 					)
+					.map(name -> name.substring(0, name.length() - ".traineddata".length()))
+					.filter(code -> !NON_LANGUAGE_DATA.contains(code))
 					.map(
-						name -> LanguageCodes
-								.ofAlpha3(name.substring(0,3))
+						code -> LanguageCodes
+								.ofAlpha3(code)
 								.orElse(
 									new Language(
-										String.format("<unknown (%s)>", name),
-										name,
+										String.format("<unknown (%s)>", code),
+										code,
 										"<na>"
 									)
 								)
@@ -0,0 +1,162 @@
+package com.h119.transcript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+
+/**
+ * Collects the log messages and the progress reported by any number of
+ * worker threads and shows them on the user interface at most FRAMES_PER_SECOND
+ * times a second.
+ *
+ * The workers only add to a lock-free queue and set atomic counters. A
+ * timer thread checks them every frame and, if anything has changed and
+ * the previous update has been shown, hands a single update to the JavaFX
+ * application thread. So the work done on the user interface depends on
+ * the frame rate, not on the number of pages or workers.
+ */
+class UiEventBus {
+
+	private static final int FRAMES_PER_SECOND = 10;
+
+	/**
+	 * The messages waiting for the next frame are limited as well: more
+	 * than what the log view shows would be removed from it right away.
+	 */
+	private static final int MAX_QUEUED_MESSAGES = LogView.MAX_MESSAGES;
+
+	private static final ScheduledExecutorService timer =
+		Executors.newSingleThreadScheduledExecutor(runnable -> {
+			var thread = new Thread(runnable, "ui-event-bus");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	private final Consumer<List<String>> logAppender;
+	private final Executor uiThread;
+
+	private final Queue<String> messages = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queuedMessages = new AtomicInteger(0);
+	private final AtomicLong skippedMessages = new AtomicLong(0);
+
+	private final AtomicLong workDone = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(1);
+
+	private final AtomicBoolean changed = new AtomicBoolean(false);
+	private final AtomicBoolean updatePending = new AtomicBoolean(false);
+
+	private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper(0);
+
+	private ScheduledFuture<?> frames;
+
+	public UiEventBus(LogView logView) {
+		this(logView::append, Platform::runLater);
+
+		long frameMillis = 1000 / FRAMES_PER_SECOND;
+		frames = timer.scheduleAtFixedRate(this::requestUpdate, frameMillis, frameMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a bus without the timer, its frames are driven by calling
+	 * requestUpdate().
+	 *
+	 * @param logAppender appends the messages to the log
+	 * @param uiThread runs the updates on the thread of the user interface
+	 */
+	UiEventBus(Consumer<List<String>> logAppender, Executor uiThread) {
+		this.logAppender = logAppender;
+		this.uiThread = uiThread;
+	}
+
+	/**
+	 * Adds a message to the log (from any thread).
+	 */
+	public void log(String message) {
+		messages.add(message);
+
+		// Drops the oldest messages if the workers are faster than the frames
+		if (queuedMessages.incrementAndGet() > MAX_QUEUED_MESSAGES && messages.poll() != null) {
+			queuedMessages.decrementAndGet();
+			skippedMessages.incrementAndGet();
+		}
+
+		changed.set(true);
+	}
+
+	/**
+	 * Sets the progress (from any thread).
+	 */
+	public void progress(long workDone, long max) {
+		this.max.set(max);
+		this.workDone.set(workDone);
+		changed.set(true);
+	}
+
+	/**
+	 * The progress between 0 and 1, updated on the JavaFX application thread.
+	 */
+	public ReadOnlyDoubleProperty progressProperty() {
+		return progress.getReadOnlyProperty();
+	}
+
+	/**
+	 * Shows the changes right away. Must be called on the JavaFX application
+	 * thread.
+	 */
+	public void flush() {
+		changed.set(false);
+
+		var newMessages = new ArrayList<String>();
+		long skipped = skippedMessages.getAndSet(0);
+
+		if (skipped > 0)
+			newMessages.add(String.format("... (%d messages skipped)", skipped));
+
+		for (String message = messages.poll(); message != null; message = messages.poll()) {
+			queuedMessages.decrementAndGet();
+			newMessages.add(message);
+		}
+
+		if (!newMessages.isEmpty())
+			logAppender.accept(newMessages);
+
+		long currentMax = max.get();
+		progress.set(currentMax > 0 ? Math.min(1.0, (double) workDone.get() / currentMax) : 0);
+	}
+
+	/**
+	 * Stops the timer. The changes that haven't been shown yet are only
+	 * shown by flush().
+	 */
+	public void close() {
+		if (frames != null)
+			frames.cancel(false);
+	}
+
+	/**
+	 * Called by the timer every frame: at most one update is waiting for the
+	 * JavaFX application thread at a time.
+	 */
+	void requestUpdate() {
+		if (changed.get() && updatePending.compareAndSet(false, true)) {
+			uiThread.execute(() -> {
+				updatePending.set(false);
+				flush();
+			});
+		}
+	}
+}
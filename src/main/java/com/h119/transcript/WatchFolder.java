@@ -0,0 +1,389 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.h119.transcript.util.Json;
+import static com.h119.transcript.util.LanguageCodes.Language;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Processes the PDF files dropped into an inbox directory for as long as it
+ * runs, with the Tesseract engines started only once.
+ *
+ * The watched directory has the following subdirectories:
+ * <ul>
+ *   <li>inbox: the PDF files to be processed are copied here</li>
+ *   <li>queue: the accepted jobs. A file is moved here from the inbox once
+ *       it has been written completely, so the queue is kept on disk: the
+ *       jobs that are still here when the application starts (because it
+ *       has been stopped while processing them) are processed again.</li>
+ *   <li>done: the processed PDF files and their Word documents</li>
+ *   <li>failed: the PDF files that could not be processed</li>
+ *   <li>status: a JSON file per job with its state (queued, running, done
+ *       or failed) and, while it's running, its progress</li>
+ * </ul>
+ */
+class WatchFolder {
+
+	/**
+	 * A file in the inbox is only accepted if its size and modification
+	 * time haven't changed for this long (it may still be being copied).
+	 */
+	private static final long STABLE_MILLIS = 2000;
+	private static final long POLL_MILLIS = 1000;
+
+	/**
+	 * The size and modification time of a file in the inbox when it was
+	 * first seen with them.
+	 */
+	private static class InboxFile {
+		final long size;
+		final long lastModified;
+		final long seenAt;
+
+		InboxFile(long size, long lastModified, long seenAt) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.seenAt = seenAt;
+		}
+	}
+
+	private final Path inbox;
+	private final Path queue;
+	private final Path done;
+	private final Path failed;
+	private final Path status;
+
+	private final Language documentLanguage;
+	private final ProcessingOptions options;
+	private final int jobWorkers;
+	private final ProcessListener listener;
+
+	private final Map<Path, InboxFile> inboxFiles = new HashMap<>();
+
+	/**
+	 * @param jobWorkers the number of documents processed at the same time
+	 *        (the OCR engines are shared by them)
+	 * @param listener receives the log of the jobs and tells when to stop
+	 */
+	public WatchFolder(
+		Path directory, Language documentLanguage, ProcessingOptions options,
+		int jobWorkers, ProcessListener listener
+	) {
+		this.inbox = directory.resolve("inbox");
+		this.queue = directory.resolve("queue");
+		this.done = directory.resolve("done");
+		this.failed = directory.resolve("failed");
+		this.status = directory.resolve("status");
+		this.documentLanguage = documentLanguage;
+		this.options = options;
+		this.jobWorkers = Math.max(1, jobWorkers);
+		this.listener = listener;
+	}
+
+	/**
+	 * Processes the jobs until the listener is cancelled. The job that is
+	 * being processed at that time stays in the queue.
+	 */
+	public void run() throws IOException, InterruptedException {
+		for (var directory: List.of(inbox, queue, done, failed, status))
+			Files.createDirectories(directory);
+
+		// The Word documents are saved directly to where they end up
+		options.setOutputDirectory(done.toFile());
+
+		try (
+			// The OCR stages of every job run on the executor of the pool, at most one per engine
+			var pool = new TesseractPool(documentLanguage.getAlpha3(), options.getOcrWorkers());
+			WatchService watchService = FileSystems.getDefault().newWatchService()
+		) {
+			listener.log(String.format("Successfully initialized %d tesseract engine(s)", pool.size()));
+			pool.setCache(options.getOcrCache());
+
+			inbox.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+			ExecutorService executor = Executors.newFixedThreadPool(jobWorkers);
+
+			try {
+				for (var job: listPdfFiles(queue)) {
+					listener.log(String.format("Resuming %s", job.getFileName()));
+					executor.submit(() -> process(job, pool));
+				}
+
+				listener.log(String.format("Watching %s", inbox));
+
+				while (!listener.isCancelled()) {
+					for (var job: acceptStableFiles())
+						executor.submit(() -> process(job, pool));
+
+					/*
+					 * The events only make the inbox to be scanned sooner,
+					 * it is scanned every second anyway (events may be lost
+					 * and a file is only accepted after it stops changing).
+					 */
+					WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+					if (key != null) {
+						key.pollEvents();
+						key.reset();
+					}
+				}
+			}
+			finally {
+				// The running jobs stop on their own as the listener is cancelled
+				executor.shutdown();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Moves the files of the inbox that have stopped changing to the queue.
+	 * A file that can't be moved stays in the inbox and is tried again on
+	 * the next scan, only the failure to list the inbox is thrown.
+	 *
+	 * @return the accepted jobs
+	 */
+	private List<Path> acceptStableFiles() throws IOException {
+		var accepted = new ArrayList<Path>();
+		var present = listPdfFiles(inbox);
+		long now = System.currentTimeMillis();
+
+		inboxFiles.keySet().retainAll(present);
+
+		for (var file: present) {
+			long size;
+			long lastModified;
+
+			try {
+				size = Files.size(file);
+				lastModified = Files.getLastModifiedTime(file).toMillis();
+			}
+			catch (IOException ioe) {
+				// Removed in the meantime
+				continue;
+			}
+
+			InboxFile seen = inboxFiles.get(file);
+
+			if (seen == null || seen.size != size || seen.lastModified != lastModified) {
+				inboxFiles.put(file, new InboxFile(size, lastModified, now));
+				continue;
+			}
+
+			if (now - seen.seenAt < STABLE_MILLIS)
+				continue;
+
+			Path job = queue.resolve(uniqueJobName(file.getFileName().toString()));
+
+			try {
+				Files.move(file, job, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (IOException ioe) {
+				listener.log(String.format("Could not queue %s: %s", file.getFileName(), ioe));
+				continue;
+			}
+
+			inboxFiles.remove(file);
+			writeStatus(job, "queued", null);
+
+			listener.log(String.format("Queued %s", job.getFileName()));
+			accepted.add(job);
+		}
+
+		return accepted;
+	}
+
+	/**
+	 * The name of the file, or the name with a number appended if a job of
+	 * that name exists already, so that the results of a job never
+	 * overwrite the results of another.
+	 */
+	private String uniqueJobName(String fileName) {
+		String baseName = jobName(fileName);
+
+		String name = baseName;
+
+		for (int i = 2; isJobNameTaken(name); ++i)
+			name = String.format("%s-%d", baseName, i);
+
+		return name + ".pdf";
+	}
+
+	private boolean isJobNameTaken(String name) {
+		return
+			Files.exists(queue.resolve(name + ".pdf")) ||
+			Files.exists(done.resolve(name + ".pdf")) ||
+			Files.exists(failed.resolve(name + ".pdf")) ||
+			Files.exists(status.resolve(name + ".json"));
+	}
+
+	private void process(Path job, TesseractPool pool) {
+		String name = jobName(job.getFileName().toString());
+		long start = System.nanoTime();
+
+		// Stopped before the job could be started, it stays in the queue
+		if (listener.isCancelled())
+			return;
+
+		try {
+			writeStatus(job, "running", null);
+
+			File exportFile = new Pipeline(job.toFile(), documentLanguage, options, new JobListener(job), pool).run();
+
+			if (exportFile == null) {
+				// Stopped: the job stays in the queue and is resumed on the next start
+				writeStatus(job, "queued", null);
+				return;
+			}
+
+			Files.move(job, done.resolve(job.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+			writeStatus(
+				job, "done",
+				String.format(
+					Locale.ROOT, "\"output\":%s,\"seconds\":%.3f",
+					Json.quote(exportFile.getPath()), (System.nanoTime() - start) / 1e9
+				)
+			);
+
+			listener.log(String.format("[%s] The Word file has been created: %s", name, exportFile));
+		}
+		catch (Exception e) {
+			listener.log(String.format("[%s] Error: %s", name, e));
+
+			try {
+				// The error may have been caused by stopping, the job is tried again then
+				if (listener.isCancelled()) {
+					writeStatus(job, "queued", null);
+					return;
+				}
+
+				Files.move(job, failed.resolve(job.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+				writeStatus(job, "failed", String.format("\"error\":%s", Json.quote(e.toString())));
+			}
+			catch (IOException ioe) {
+				listener.log(String.format("[%s] Error: %s", name, ioe));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the status file of the job. The file is written under a
+	 * temporary name and renamed, so a reader never sees it half written.
+	 * If it can't be written the error is logged and the job goes on (its
+	 * status is written again on its next change).
+	 *
+	 * @param fields additional JSON fields (without braces) or null
+	 */
+	private void writeStatus(Path job, String state, String fields) {
+		String name = jobName(job.getFileName().toString());
+
+		String json = String.format(
+			"{\"job\":%s,\"state\":%s,\"updated\":%s%s}\n",
+			Json.quote(name), Json.quote(state), Json.quote(Instant.now().toString()),
+			fields != null ? "," + fields : ""
+		);
+
+		Path statusFile = status.resolve(name + ".json");
+		Path temporaryFile = status.resolve(name + ".json.tmp");
+
+		try {
+			Files.write(temporaryFile, json.getBytes(StandardCharsets.UTF_8));
+			Files.move(temporaryFile, statusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ioe) {
+			listener.log(String.format("[%s] Could not write the status: %s", name, ioe));
+
+			try {
+				Files.deleteIfExists(temporaryFile);
+			}
+			catch (IOException deleteError) {
+				// It is replaced by the next status
+			}
+		}
+	}
+
+	private static String jobName(String fileName) {
+		int extension = fileName.lastIndexOf('.');
+
+		return extension > 0 ? fileName.substring(0, extension) : fileName;
+	}
+
+	/**
+	 * The PDF files of the directory sorted by name.
+	 */
+	private static List<Path> listPdfFiles(Path directory) throws IOException {
+		var files = new ArrayList<Path>();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (var file: stream) {
+				if (
+					Files.isRegularFile(file) &&
+					file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf")
+				) {
+					files.add(file);
+				}
+			}
+		}
+
+		files.sort(null);
+
+		return files;
+	}
+
+	/**
+	 * Prefixes the log of a job with its name, so that the logs of the jobs
+	 * running at the same time can be told apart, and writes its progress
+	 * into its status file (whenever it has grown by a percent).
+	 */
+	private class JobListener implements ProcessListener {
+		private final Path job;
+		private final String name;
+		private long percentDone = 0;
+
+		JobListener(Path job) {
+			this.job = job;
+			this.name = jobName(job.getFileName().toString());
+		}
+
+		@Override
+		public void log(String message) {
+			listener.log(String.format("[%s] %s", name, message));
+		}
+
+		@Override
+		public synchronized void progress(long workDone, long max) {
+			long percent = max > 0 ? Math.min(100, 100 * workDone / max) : 0;
+
+			if (percent <= percentDone)
+				return;
+
+			percentDone = percent;
+			writeStatus(job, "running", String.format(Locale.ROOT, "\"progress\":%.2f", percent / 100.0));
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return listener.isCancelled();
+		}
+	}
+}
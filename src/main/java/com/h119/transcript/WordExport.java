@@ -0,0 +1,78 @@
+package com.h119.transcript;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+
+/**
+ * Saves the recognized text as a Word document.
+ */
+class WordExport {
+
+	private WordExport() {}
+
+	/**
+	 * Saves the text of the pages (in page order) with one paragraph per line.
+	 * The progress is reported between 600 and 1000 (out of 1000).
+	 *
+	 * @return false if the process has been cancelled before the file was saved
+	 */
+	public static boolean save(
+		String[] pageTexts, File exportFile, ProcessListener listener
+	) throws Docx4JException {
+		var buildEvent = new FlightEvents.DocxBuild();
+		buildEvent.begin();
+
+		var documentLines = new ArrayList<String>();
+
+		for (var pageText: pageTexts) {
+			if (pageText != null)
+				documentLines.addAll(Arrays.asList(pageText.split("\n")));
+		}
+
+		listener.log("Saving the text as a Word document...");
+
+		WordprocessingMLPackage wordPackage = WordprocessingMLPackage.createPackage();
+		MainDocumentPart mainDocumentPart = wordPackage.getMainDocumentPart();
+
+		int currentLine = 0;
+		int lineNumber = documentLines.size();
+
+		for (var line: documentLines) {
+			mainDocumentPart.addParagraphOfText(line);
+
+			if (listener.isCancelled())
+				return false;
+
+			listener.progress(600 + (360 * (currentLine + 1) / lineNumber), 1000);
+			currentLine += 1;
+		}
+
+		if (buildEvent.shouldCommit()) {
+			buildEvent.pages = pageTexts.length;
+			buildEvent.paragraphs = lineNumber;
+			buildEvent.characters = documentLines.stream().mapToLong(String::length).sum();
+			buildEvent.commit();
+		}
+
+		var saveEvent = new FlightEvents.DocxSave();
+		saveEvent.begin();
+
+		wordPackage.save(exportFile);
+
+		if (saveEvent.shouldCommit()) {
+			saveEvent.pages = pageTexts.length;
+			saveEvent.file = exportFile.getPath();
+			saveEvent.bytes = exportFile.length();
+			saveEvent.commit();
+		}
+
+		listener.progress(1000, 1000);
+
+		return true;
+	}
+}
@@ -0,0 +1,40 @@
+package com.h119.transcript.util;
+
+/**
+ * Helpers for writing JSON by hand (the application has no JSON library).
+ */
+public class Json {
+
+	private Json() {}
+
+	/**
+	 * The string as a quoted JSON string literal.
+	 */
+	public static String quote(String value) {
+		if (value == null)
+			return "null";
+
+		var result = new StringBuilder(value.length() + 2);
+		result.append('"');
+
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+
+			switch (c) {
+				case '"': result.append("\\\""); break;
+				case '\\': result.append("\\\\"); break;
+				case '\n': result.append("\\n"); break;
+				case '\r': result.append("\\r"); break;
+				case '\t': result.append("\\t"); break;
+				default:
+					if (c < 0x20)
+						result.append(String.format("\\u%04x", (int) c));
+					else
+						result.append(c);
+			}
+		}
+
+		result.append('"');
+		return result.toString();
+	}
+}
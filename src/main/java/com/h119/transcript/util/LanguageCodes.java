@@ -1,23 +1,91 @@
 package com.h119.transcript.util;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.BinaryOperator;
 
+/**
+ * The ISO 639 languages, looked up by their codes and names.
+ *
+ * The lookups use indices built once when the class is loaded, so they take
+ * constant (or, by name, logarithmic) time, and the lookups of a single
+ * language don't allocate: the Optional of every language is created with
+ * it.
+ *
+ * A language that has a bibliographic and a terminologic ISO 639-2 code
+ * (e.g. ger and deu) has an entry for both codes, and some languages have
+ * entries for their alternative names (e.g. Flemish). The lookups by
+ * alpha-2 code and by name return the entry of the terminologic code, which
+ * the training data of Tesseract is named after.
+ */
 public class LanguageCodes {
 
+	private static final String NOT_AVAILABLE = "<na>";
+
 	private static final List<Language> languageCodes;
 
+	/** Both the bibliographic and the terminologic codes. */
+	private static final Map<String, Language> byAlpha3;
+	private static final Map<String, Language> byAlpha2;
+	private static final NavigableMap<String, Language> byName;
+
+	/** The bibliographic codes of the languages that have a terminologic one as well. */
+	private static final Map<String, Language> terminologicByBibliographic;
+
+	/**
+	 * @param alpha3 a bibliographic or terminologic ISO 639-2 code (e.g.
+	 *        ger or deu)
+	 */
 	public static Optional<Language> ofAlpha3(String alpha3) {
-		return
-			languageCodes
-				.stream()
-				.filter(
-					lc -> alpha3.equals(lc.getAlpha3())
-				)
-				.findAny();
+		return optional(byAlpha3.get(alpha3));
+	}
+
+	/**
+	 * The language with its terminologic code (e.g. deu for ger), the one
+	 * the training data of Tesseract is named after.
+	 *
+	 * @param alpha3 a bibliographic or terminologic ISO 639-2 code
+	 */
+	public static Optional<Language> ofAlpha3Terminologic(String alpha3) {
+		Language language = terminologicByBibliographic.get(alpha3);
+
+		return language != null ? language.self : ofAlpha3(alpha3);
+	}
+
+	/**
+	 * @param alpha2 an ISO 639-1 code (e.g. de)
+	 */
+	public static Optional<Language> ofAlpha2(String alpha2) {
+		return optional(byAlpha2.get(alpha2));
 	}
-	
+
+	/**
+	 * @param name the name of the language (or one of its alternative
+	 *        names), regardless of case
+	 */
+	public static Optional<Language> ofName(String name) {
+		return optional(byName.get(name));
+	}
+
+	/**
+	 * The languages whose name (or one of whose alternative names) starts
+	 * with prefix, regardless of case, in the order of their names.
+	 */
+	public static Collection<Language> withNamePrefix(String prefix) {
+		return byName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+	}
+
+	private static Optional<Language> optional(Language language) {
+		return language != null ? language.self : Optional.empty();
+	}
+
 	private LanguageCodes() {}
 
 	public static class Language {
@@ -33,6 +101,9 @@ public class LanguageCodes {
 		 */
 		private String alpha2;
 
+		/** Returned by the lookups, so that they don't allocate. */
+		private final Optional<Language> self = Optional.of(this);
+
 		public Language(String name, String alpha3, String alpha2) {
 			this.name = name;
 			this.alpha3 = alpha3;
@@ -667,5 +738,52 @@ public class LanguageCodes {
 			new Language("Zulu","zul","zu"),
 			new Language("Zuni","zun","<na>")
 		);
+
+		// The bibliographic code of a language comes before the terminologic one
+		var firstCodes = new HashMap<String, String>();
+		var terminologicCodes = new HashMap<String, String>();
+
+		for (var language: languageCodes) {
+			if (language.alpha2.equals(NOT_AVAILABLE))
+				continue;
+
+			String firstCode = firstCodes.putIfAbsent(language.alpha2, language.alpha3);
+
+			if (firstCode != null && !firstCode.equals(language.alpha3))
+				terminologicCodes.put(firstCode, language.alpha3);
+		}
+
+		var alpha3Index = new HashMap<String, Language>();
+
+		// The first name of a code is the one it has always been shown with
+		for (var language: languageCodes)
+			alpha3Index.putIfAbsent(language.alpha3, language);
+
+		// The first entry of a key, unless it has a bibliographic code and a later one has a terminologic one
+		BinaryOperator<Language> preferTerminologic =
+			(indexed, language) ->
+				terminologicCodes.containsKey(indexed.alpha3) && !terminologicCodes.containsKey(language.alpha3)
+					? language
+					: indexed;
+
+		var alpha2Index = new HashMap<String, Language>();
+		var nameIndex = new TreeMap<String, Language>(String.CASE_INSENSITIVE_ORDER);
+
+		for (var language: languageCodes) {
+			nameIndex.merge(language.name, language, preferTerminologic);
+
+			if (!language.alpha2.equals(NOT_AVAILABLE))
+				alpha2Index.merge(language.alpha2, language, preferTerminologic);
+		}
+
+		var terminologicIndex = new HashMap<String, Language>();
+
+		for (var entry: terminologicCodes.entrySet())
+			terminologicIndex.put(entry.getKey(), alpha3Index.get(entry.getValue()));
+
+		byAlpha3 = Map.copyOf(alpha3Index);
+		byAlpha2 = Map.copyOf(alpha2Index);
+		byName = Collections.unmodifiableNavigableMap(nameIndex);
+		terminologicByBibliographic = Map.copyOf(terminologicIndex);
 	}
 }
@@ -0,0 +1,139 @@
+package com.h119.transcript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PageJournalTest {
+
+	private static final String FINGERPRINT = "document.pdf|1234|5678|hun";
+
+	@Test
+	void restoresTheRecordedPages(@TempDir Path directory) throws IOException {
+		File journalFile = directory.resolve("document.journal").toFile();
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			journal.record(0, 0, "first page");
+			journal.record(2, 90, "third page, turned");
+		}
+
+		var pages = new DocumentPages(3);
+		pages.setRotation(2, 90);
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			assertEquals(2, journal.restore(pages, PageSelection.ALL));
+		}
+
+		assertEquals("first page", pages.getText(0));
+		assertNull(pages.getText(1));
+		assertEquals("third page, turned", pages.getText(2));
+	}
+
+	@Test
+	void dropsTheTruncatedRecord(@TempDir Path directory) throws IOException {
+		File journalFile = directory.resolve("document.journal").toFile();
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			journal.record(0, 0, "complete");
+			journal.record(1, 0, "killed while writing this page");
+		}
+
+		// The process was killed in the middle of the text of the last record
+		try (var file = new RandomAccessFile(journalFile, "rw")) {
+			file.setLength(file.length() - 10);
+		}
+
+		long truncatedLength = journalFile.length();
+		var pages = new DocumentPages(3);
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			assertEquals(1, journal.restore(pages, PageSelection.ALL));
+
+			// The partial record is cut off, the next one follows the complete ones
+			assertEquals(truncatedLength - (12 + 20), journalFile.length());
+
+			journal.record(2, 0, "after the restart");
+		}
+
+		pages = new DocumentPages(3);
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			assertEquals(2, journal.restore(pages, PageSelection.ALL));
+		}
+
+		assertEquals("complete", pages.getText(0));
+		assertNull(pages.getText(1));
+		assertEquals("after the restart", pages.getText(2));
+	}
+
+	@Test
+	void dropsATruncatedRecordHeader(@TempDir Path directory) throws IOException {
+		File journalFile = directory.resolve("document.journal").toFile();
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			journal.record(0, 0, "complete");
+			journal.record(1, 0, "lost");
+		}
+
+		// Only the page number of the last record has been written
+		try (var file = new RandomAccessFile(journalFile, "rw")) {
+			file.setLength(file.length() - "lost".length() - 8);
+		}
+
+		var pages = new DocumentPages(2);
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			assertEquals(1, journal.restore(pages, PageSelection.ALL));
+		}
+
+		assertEquals("complete", pages.getText(0));
+		assertFalse(pages.hasText(1));
+	}
+
+	@Test
+	void startsOverWithAnotherFingerprint(@TempDir Path directory) throws IOException {
+		File journalFile = directory.resolve("document.journal").toFile();
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			journal.record(0, 0, "recognized in Hungarian");
+		}
+
+		var pages = new DocumentPages(1);
+
+		try (var journal = PageJournal.open(journalFile, "document.pdf|1234|5678|eng")) {
+			assertEquals(0, journal.restore(pages, PageSelection.ALL));
+		}
+
+		assertNull(pages.getText(0));
+	}
+
+	@Test
+	void leavesOutRotatedAndUnselectedPages(@TempDir Path directory) throws IOException {
+		File journalFile = directory.resolve("document.journal").toFile();
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			journal.record(0, 0, "rotated since");
+			journal.record(1, 0, "selected");
+			journal.record(2, 0, "not selected");
+		}
+
+		var pages = new DocumentPages(3);
+		pages.setRotation(0, 180);
+
+		try (var journal = PageJournal.open(journalFile, FINGERPRINT)) {
+			assertEquals(1, journal.restore(pages, PageSelection.parse("1-2")));
+		}
+
+		assertNull(pages.getText(0));
+		assertEquals("selected", pages.getText(1));
+		assertNull(pages.getText(2));
+	}
+}
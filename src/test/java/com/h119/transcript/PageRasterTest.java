@@ -0,0 +1,104 @@
+package com.h119.transcript;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+class PageRasterTest {
+
+	/**
+	 * 3 x 2 pixels:
+	 *
+	 *  1  2  3
+	 * 11 12 13
+	 */
+	private static PageRaster grayPage() {
+		var image = new BufferedImage(3, 2, BufferedImage.TYPE_BYTE_GRAY);
+
+		for (int y = 0; y < 2; ++y) {
+			for (int x = 0; x < 3; ++x)
+				image.getRaster().setSample(x, y, 0, 10 * y + x + 1);
+		}
+
+		return PageRaster.of(new PageImage(image, 300));
+	}
+
+	@Test
+	void rotatedClockwise() {
+		PageRaster rotated = grayPage().rotated(90);
+
+		assertEquals(2, rotated.getWidth());
+		assertEquals(3, rotated.getHeight());
+		assertEquals(2, rotated.getBytesPerLine());
+		assertEquals(300, rotated.getDpi());
+		assertArrayEquals(new byte[] { 11, 1, 12, 2, 13, 3 }, rotated.getData());
+	}
+
+	@Test
+	void rotatedUpsideDown() {
+		PageRaster rotated = grayPage().rotated(180);
+
+		assertEquals(3, rotated.getWidth());
+		assertEquals(2, rotated.getHeight());
+		assertArrayEquals(new byte[] { 13, 12, 11, 3, 2, 1 }, rotated.getData());
+	}
+
+	@Test
+	void rotatedCounterclockwise() {
+		var expected = new byte[] { 3, 13, 2, 12, 1, 11 };
+
+		assertArrayEquals(expected, grayPage().rotated(270).getData());
+		assertArrayEquals(expected, grayPage().rotated(-90).getData());
+	}
+
+	@Test
+	void fullTurnsGiveTheSamePage() {
+		PageRaster page = grayPage();
+
+		assertSame(page, page.rotated(0));
+		assertSame(page, page.rotated(360));
+		assertArrayEquals(page.getData(), page.rotated(90).rotated(90).rotated(90).rotated(90).getData());
+	}
+
+	@Test
+	void binaryPagesKeepTheirPackedPixels() {
+		// 10 pixels in a line (2 bytes), the first and the ninth one white
+		var image = new BufferedImage(10, 1, BufferedImage.TYPE_BYTE_BINARY);
+		image.setRGB(0, 0, 0xffffff);
+		image.setRGB(8, 0, 0xffffff);
+
+		PageRaster page = PageRaster.of(new PageImage(image, 300));
+		assertEquals(0, page.getBytesPerPixel());
+		assertArrayEquals(new byte[] { (byte) 0x80, (byte) 0x80 }, page.getData());
+
+		PageRaster rotated = page.rotated(90);
+		assertEquals(1, rotated.getWidth());
+		assertEquals(10, rotated.getHeight());
+		assertEquals(1, rotated.getBytesPerLine());
+		assertArrayEquals(new byte[] { (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, (byte) 0x80, 0 }, rotated.getData());
+
+		assertArrayEquals(new byte[] { 0x40, 0x40 }, page.rotated(180).getData());
+	}
+
+	@Test
+	void colorPagesMoveWholePixels() {
+		var image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, 0xff0000);
+		image.setRGB(1, 0, 0x0000ff);
+
+		PageRaster rotated = PageRaster.of(new PageImage(image, 300)).rotated(180);
+
+		assertEquals(3, rotated.getBytesPerPixel());
+		assertArrayEquals(new byte[] { 0, 0, (byte) 0xff, (byte) 0xff, 0, 0 }, rotated.getData());
+	}
+
+	@Test
+	void onlyMultiplesOf90Degrees() {
+		assertThrows(IllegalArgumentException.class, () -> grayPage().rotated(45));
+	}
+}
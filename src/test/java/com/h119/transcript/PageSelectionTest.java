@@ -0,0 +1,80 @@
+package com.h119.transcript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PageSelectionTest {
+
+	@Test
+	void blankSelectsEveryPage() {
+		assertSame(PageSelection.ALL, PageSelection.parse(null));
+		assertSame(PageSelection.ALL, PageSelection.parse(""));
+		assertSame(PageSelection.ALL, PageSelection.parse("  "));
+		assertSame(PageSelection.ALL, PageSelection.parse(" , ,"));
+
+		assertTrue(PageSelection.ALL.isAll());
+		assertTrue(PageSelection.ALL.contains(0));
+		assertTrue(PageSelection.ALL.contains(10000));
+		assertEquals(7, PageSelection.ALL.count(7));
+	}
+
+	@Test
+	void pagesAndRanges() {
+		var selection = PageSelection.parse("1-20,45,100-");
+
+		assertFalse(selection.isAll());
+		assertTrue(selection.contains(0));
+		assertTrue(selection.contains(19));
+		assertFalse(selection.contains(20));
+		assertTrue(selection.contains(44));
+		assertFalse(selection.contains(45));
+		assertFalse(selection.contains(98));
+		assertTrue(selection.contains(99));
+		assertTrue(selection.contains(10000));
+
+		assertEquals(20 + 1 + 51, selection.count(150));
+		assertEquals("1-20,45,100-", selection.toString());
+	}
+
+	@Test
+	void rangeWithoutStartBeginsWithTheFirstPage() {
+		var selection = PageSelection.parse("-5");
+
+		assertTrue(selection.contains(0));
+		assertTrue(selection.contains(4));
+		assertFalse(selection.contains(5));
+		assertEquals("1-5", selection.toString());
+	}
+
+	@Test
+	void blankPartsAndSpacesAreIgnored() {
+		var selection = PageSelection.parse(" 3 , ,7 - 8 ");
+
+		assertTrue(selection.contains(2));
+		assertFalse(selection.contains(3));
+		assertTrue(selection.contains(6));
+		assertTrue(selection.contains(7));
+		assertEquals("3,7-8", selection.toString());
+	}
+
+	@Test
+	void invalidSelections() {
+		for (var selection: new String[] { "0", "0-3", "5-3", "-", "a", "1-b", "1,,x" })
+			assertThrows(IllegalArgumentException.class, () -> PageSelection.parse(selection), selection);
+	}
+
+	@Test
+	void selectionBeyondTheLastPage() {
+		var selection = PageSelection.parse("500-");
+
+		assertEquals(0, selection.count(100));
+		assertThrows(IllegalArgumentException.class, () -> selection.checkSelected(100));
+
+		selection.checkSelected(500);
+	}
+}
@@ -0,0 +1,77 @@
+package com.h119.transcript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.junit.jupiter.api.Test;
+
+class ResolutionPlannerTest {
+
+	/** 2 x 3 inches. */
+	private static final float PAGE_WIDTH = 144;
+	private static final float PAGE_HEIGHT = 216;
+
+	private final ResolutionPlanner planner = new ResolutionPlanner(100, 600);
+
+	@Test
+	void scansAreRenderedAtTheirResolution() throws IOException {
+		try (var document = new PDDocument()) {
+			PDPage page = pageWithImage(document, 400, 600, 0, 0, PAGE_WIDTH, PAGE_HEIGHT);
+
+			assertEquals(200, planner.planDpi(page));
+		}
+	}
+
+	@Test
+	void theResolutionIsClamped() throws IOException {
+		try (var document = new PDDocument()) {
+			PDPage page = pageWithImage(document, 400, 600, 0, 0, PAGE_WIDTH, PAGE_HEIGHT);
+
+			assertEquals(300, new ResolutionPlanner(300, 400).planDpi(page));
+		}
+	}
+
+	@Test
+	void smallImagesAreNotTakenForScans() throws IOException {
+		try (var document = new PDDocument()) {
+			// A logo of 300 x 300 pixels drawn on a square inch
+			PDPage page = pageWithImage(document, 300, 300, 36, 108, 72, 72);
+
+			assertEquals(ResolutionPlanner.DEFAULT_DPI, planner.planDpi(page));
+		}
+	}
+
+	@Test
+	void pagesWithoutImages() throws IOException {
+		try (var document = new PDDocument()) {
+			var page = new PDPage(new PDRectangle(PAGE_WIDTH, PAGE_HEIGHT));
+			document.addPage(page);
+
+			assertEquals(ResolutionPlanner.DEFAULT_DPI, planner.planDpi(page));
+		}
+	}
+
+	private static PDPage pageWithImage(
+		PDDocument document, int pixelWidth, int pixelHeight, float x, float y, float width, float height
+	) throws IOException {
+		var page = new PDPage(new PDRectangle(PAGE_WIDTH, PAGE_HEIGHT));
+		document.addPage(page);
+
+		var image = LosslessFactory.createFromImage(
+			document, new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_BYTE_GRAY)
+		);
+
+		try (var content = new PDPageContentStream(document, page)) {
+			content.drawImage(image, x, y, width, height);
+		}
+
+		return page;
+	}
+}
@@ -0,0 +1,119 @@
+package com.h119.transcript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingWordExportTest {
+
+	private static final Pattern TEXT = Pattern.compile("<w:t xml:space=\"preserve\">(.*?)</w:t>");
+
+	@Test
+	void writesThePagesInPageOrder(@TempDir Path directory) throws IOException {
+		File exportFile = directory.resolve("document.docx").toFile();
+
+		try (var export = new StreamingWordExport(exportFile, 4)) {
+			export.addPage(2, "third");
+			export.addPage(1, "second\nline");
+			export.skipPage(3);
+			export.addPage(0, "first");
+
+			export.finish();
+		}
+
+		assertEquals(List.of("first", "second", "line", "third"), paragraphs(exportFile));
+		assertFalse(new File(exportFile.getPath() + ".part").exists());
+	}
+
+	@Test
+	void leavesOutTheSkippedPages(@TempDir Path directory) throws IOException {
+		File exportFile = directory.resolve("document.docx").toFile();
+
+		try (var export = new StreamingWordExport(exportFile, 4)) {
+			export.skipPage(1);
+			export.addPage(2, "third");
+			export.skipPage(0);
+			export.addPage(3, "fourth");
+
+			export.finish();
+		}
+
+		assertEquals(List.of("third", "fourth"), paragraphs(exportFile));
+	}
+
+	@Test
+	void escapesTheMarkup(@TempDir Path directory) throws IOException {
+		File exportFile = directory.resolve("document.docx").toFile();
+
+		try (var export = new StreamingWordExport(exportFile, 1)) {
+			export.addPage(0, "a < b && c > d\tcaf\u00e9\u0001\u000b\ufffe.");
+			export.finish();
+		}
+
+		assertEquals(List.of("a &lt; b &amp;&amp; c &gt; d\tcaf\u00e9."), paragraphs(exportFile));
+	}
+
+	@Test
+	void pagesCanOnlyBeAddedOnce(@TempDir Path directory) throws IOException {
+		File exportFile = directory.resolve("document.docx").toFile();
+
+		try (var export = new StreamingWordExport(exportFile, 3)) {
+			export.addPage(0, "written");
+			export.addPage(2, "waiting");
+
+			assertThrows(IllegalArgumentException.class, () -> export.addPage(0, "again"));
+			assertThrows(IllegalArgumentException.class, () -> export.skipPage(2));
+		}
+	}
+
+	@Test
+	void unfinishedDocumentIsDeleted(@TempDir Path directory) throws IOException {
+		File exportFile = directory.resolve("document.docx").toFile();
+		File partFile = new File(exportFile.getPath() + ".part");
+
+		try (var export = new StreamingWordExport(exportFile, 2)) {
+			export.addPage(0, "first");
+
+			assertTrue(partFile.exists());
+			assertThrows(IllegalStateException.class, export::finish);
+		}
+
+		assertFalse(partFile.exists());
+		assertFalse(exportFile.exists());
+	}
+
+	/**
+	 * The text of the paragraphs of word/document.xml (still escaped).
+	 */
+	private static List<String> paragraphs(File exportFile) throws IOException {
+		try (var zip = new ZipFile(exportFile)) {
+			var entry = zip.getEntry("word/document.xml");
+			String document;
+
+			try (var input = zip.getInputStream(entry)) {
+				document = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+			}
+
+			var paragraphs = new ArrayList<String>();
+			var matcher = TEXT.matcher(document);
+
+			while (matcher.find())
+				paragraphs.add(matcher.group(1));
+
+			return paragraphs;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.h119.transcript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Test;
+
+class UiEventBusTest {
+
+	/** The lists of messages appended to the log. */
+	private final List<List<String>> appended = new ArrayList<>();
+
+	/** The updates waiting for the thread of the user interface. */
+	private final Queue<Runnable> updates = new ArrayDeque<>();
+
+	@Test
+	void messagesOfSeveralFramesAreAppendedAtOnce() {
+		var bus = new UiEventBus(appended::add, updates::add);
+
+		bus.log("first");
+		bus.log("second");
+		bus.requestUpdate();
+		bus.log("third");
+		bus.requestUpdate();
+
+		// The user interface hasn't run the first update yet, so no other one is requested
+		assertEquals(1, updates.size());
+
+		updates.poll().run();
+
+		assertEquals(List.of(List.of("first", "second", "third")), appended);
+	}
+
+	@Test
+	void nothingIsUpdatedWithoutChanges() {
+		var bus = new UiEventBus(appended::add, updates::add);
+
+		bus.requestUpdate();
+		assertTrue(updates.isEmpty());
+
+		bus.log("message");
+		bus.requestUpdate();
+		updates.poll().run();
+		bus.requestUpdate();
+
+		assertTrue(updates.isEmpty());
+		assertEquals(1, appended.size());
+	}
+
+	@Test
+	void oldestMessagesAreDropped() {
+		var bus = new UiEventBus(appended::add, updates::add);
+
+		for (int i = 0; i < LogView.MAX_MESSAGES + 5; ++i)
+			bus.log("message " + i);
+
+		bus.flush();
+
+		List<String> messages = appended.get(0);
+
+		assertEquals(LogView.MAX_MESSAGES + 1, messages.size());
+		assertEquals("... (5 messages skipped)", messages.get(0));
+		assertEquals("message 5", messages.get(1));
+		assertEquals("message " + (LogView.MAX_MESSAGES + 4), messages.get(messages.size() - 1));
+	}
+
+	@Test
+	void onlyTheLatestProgressIsShown() {
+		var bus = new UiEventBus(appended::add, updates::add);
+
+		bus.progress(1, 10);
+		bus.progress(5, 10);
+		bus.flush();
+
+		assertEquals(0.5, bus.progressProperty().get(), 1e-9);
+		assertTrue(appended.isEmpty());
+
+		bus.progress(20, 10);
+		bus.flush();
+
+		assertEquals(1.0, bus.progressProperty().get(), 1e-9);
+	}
+}
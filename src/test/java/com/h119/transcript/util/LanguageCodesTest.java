@@ -0,0 +1,81 @@
+package com.h119.transcript.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class LanguageCodesTest {
+
+	@Test
+	void bothCodesOfALanguage() {
+		assertEquals("Welsh", LanguageCodes.ofAlpha3("wel").get().getName());
+		assertEquals("wel", LanguageCodes.ofAlpha3("wel").get().getAlpha3());
+		assertEquals("cym", LanguageCodes.ofAlpha3("cym").get().getAlpha3());
+
+		assertEquals("ger", LanguageCodes.ofAlpha3("ger").get().getAlpha3());
+		assertEquals("deu", LanguageCodes.ofAlpha3("deu").get().getAlpha3());
+	}
+
+	@Test
+	void terminologicCode() {
+		assertEquals("cym", LanguageCodes.ofAlpha3Terminologic("wel").get().getAlpha3());
+		assertEquals("cym", LanguageCodes.ofAlpha3Terminologic("cym").get().getAlpha3());
+		assertEquals("deu", LanguageCodes.ofAlpha3Terminologic("ger").get().getAlpha3());
+		assertEquals("nld", LanguageCodes.ofAlpha3Terminologic("dut").get().getAlpha3());
+
+		// A language with a single code
+		assertEquals("hun", LanguageCodes.ofAlpha3Terminologic("hun").get().getAlpha3());
+	}
+
+	@Test
+	void alpha2AndNameGiveTheTerminologicCode() {
+		assertEquals("cym", LanguageCodes.ofAlpha2("cy").get().getAlpha3());
+		assertEquals("deu", LanguageCodes.ofAlpha2("de").get().getAlpha3());
+
+		assertEquals("deu", LanguageCodes.ofName("German").get().getAlpha3());
+		assertEquals("cym", LanguageCodes.ofName("Welsh").get().getAlpha3());
+
+		// An alternative name
+		assertEquals("nld", LanguageCodes.ofName("Flemish").get().getAlpha3());
+	}
+
+	@Test
+	void namesRegardlessOfCase() {
+		assertEquals("deu", LanguageCodes.ofName("gErMaN").get().getAlpha3());
+
+		List<String> names = LanguageCodes.withNamePrefix("germ").stream()
+			.map(LanguageCodes.Language::getName)
+			.collect(Collectors.toList());
+
+		assertEquals(
+			List.of(
+				"German", "German, Low", "German, Middle High (ca.1050-1500)",
+				"German, Old High (ca.750-1050)", "Germanic languages"
+			),
+			names
+		);
+
+		assertEquals("cym", LanguageCodes.withNamePrefix("WEL").iterator().next().getAlpha3());
+	}
+
+	@Test
+	void lookupsDontAllocate() {
+		assertSame(LanguageCodes.ofAlpha3("hun"), LanguageCodes.ofAlpha3("hun"));
+		assertSame(LanguageCodes.ofAlpha3Terminologic("ger"), LanguageCodes.ofAlpha3("deu"));
+	}
+
+	@Test
+	void unknownLanguages() {
+		assertFalse(LanguageCodes.ofAlpha3("xxx").isPresent());
+		assertFalse(LanguageCodes.ofAlpha3Terminologic("chi_sim").isPresent());
+		assertFalse(LanguageCodes.ofAlpha2("xx").isPresent());
+		assertFalse(LanguageCodes.ofName("Klingonese").isPresent());
+		assertTrue(LanguageCodes.withNamePrefix("Xyz").isEmpty());
+	}
+}